@@ -37,7 +37,7 @@ public class Portal {
             long predictEnd = System.currentTimeMillis();
             System.out.println("Predict complete. Time = " + Long.toString(predictEnd - predictStart) + " millis");
             
-            testdata.evaluate( new double[] { 0.7, 0.8, 0.9 } );
+            System.out.println(testdata.evaluate( new double[] { 0.7, 0.8, 0.9 } ));
             testdata.save("DataSets/scores.csv");
         }
         catch (Exception ex) {
@@ -1,7 +1,5 @@
 package model;
 
-import java.util.concurrent.ExecutorService;
-
 abstract class AbstractNode {
 	
     int depth;
@@ -19,10 +17,18 @@ abstract class AbstractNode {
     }
 
     // Splits this node, and children, and so on, until no further splits are possible
-    abstract AbstractNode split(Config config, FeatureSelector selector, ExecutorService exec);
+    abstract AbstractNode split(TrainingContext context);
+    
+    // for prediction: the deltaLogit of the leaf which the given row of data lands in
+    abstract double getLogitIncrement(Data data, int row);
     
-    // for prediction (alters the logit attribute within featureVector)
-    abstract void performLogitIncrement(FeatureVector featureVector);
+    // for training rows (such as those which weren't sampled for this tree): the (finalised) leaf that the row is in
+    abstract LeafNode findLeaf(TrainingContext context, int row);
     
     abstract void updateFeatureImportances(FeatureImportances importances);
+    
+    // for compiling into a Forest: the number of nodes in this subtree, then writing them into their slots
+    abstract int getNumNodes();
+    
+    abstract void flatten(ArrayForest forest, int nodeId);
 }
@@ -0,0 +1,136 @@
+package model;
+
+import java.util.List;
+
+// The trained trees compiled into flat primitive arrays on the heap.
+class ArrayForest extends Forest {
+
+    private int[] featureIds; // -1 marks a leaf
+    private double[] values; // the threshold of a branch, or the deltaLogit of a leaf
+    private int[] leftChildIds; // unused for leaves
+    private boolean[] missingGoesLeft; // where a branch sends NaNs
+    private int[] rootIds; // one per tree
+    private int numAllocated = 0; // only used while compiling
+
+    ArrayForest(List<AbstractNode> trees) {
+        this(null, trees);
+    }
+
+    // the trees of base (if not null), copied node for node, followed by trees (see GBTModel.continueTraining)
+    ArrayForest(Forest base, List<AbstractNode> trees) {
+        int numBaseNodes = (base != null) ? base.getNumNodes() : 0;
+        int numBaseTrees = (base != null) ? base.getNumTrees() : 0;
+        int numNodes = numBaseNodes;
+        for (AbstractNode tree : trees) {
+            numNodes += tree.getNumNodes();
+        }
+        featureIds = new int[numNodes];
+        values = new double[numNodes];
+        leftChildIds = new int[numNodes];
+        missingGoesLeft = new boolean[numNodes];
+        rootIds = new int[numBaseTrees + trees.size()];
+
+        for (int nodeId = allocate(numBaseNodes); nodeId < numBaseNodes; nodeId++) {
+            featureIds[nodeId] = base.getFeatureId(nodeId);
+            values[nodeId] = base.getValue(nodeId);
+            leftChildIds[nodeId] = base.getLeftChildId(nodeId);
+            missingGoesLeft[nodeId] = base.getMissingGoesLeft(nodeId);
+        }
+        for (int treeId = 0; treeId < numBaseTrees; treeId++) {
+            rootIds[treeId] = base.getRootId(treeId);
+        }
+        for (int treeId = 0; treeId < trees.size(); treeId++) {
+            rootIds[numBaseTrees + treeId] = allocate(1);
+            trees.get(treeId).flatten(this, rootIds[numBaseTrees + treeId]);
+        }
+    }
+
+    // reserves the next numSlots slots, and returns the first of them
+    int allocate(int numSlots) {
+        int firstSlot = numAllocated;
+        numAllocated += numSlots;
+        return firstSlot;
+    }
+
+    void setBranch(int nodeId, int featureId, double threshold, boolean missingLeft, int leftChildId) {
+        featureIds[nodeId] = featureId;
+        values[nodeId] = threshold;
+        missingGoesLeft[nodeId] = missingLeft;
+        leftChildIds[nodeId] = leftChildId;
+    }
+
+    void setLeaf(int nodeId, double deltaLogit) {
+        featureIds[nodeId] = -1;
+        values[nodeId] = deltaLogit;
+    }
+
+    @Override
+    int getNumTrees() {
+        return rootIds.length;
+    }
+
+    @Override
+    int getNumNodes() {
+        return featureIds.length;
+    }
+
+    @Override
+    int getRootId(int treeId) {
+        return rootIds[treeId];
+    }
+
+    @Override
+    int getFeatureId(int nodeId) {
+        return featureIds[nodeId];
+    }
+
+    @Override
+    int getLeftChildId(int nodeId) {
+        return leftChildIds[nodeId];
+    }
+
+    @Override
+    double getValue(int nodeId) {
+        return values[nodeId];
+    }
+
+    @Override
+    boolean getMissingGoesLeft(int nodeId) {
+        return missingGoesLeft[nodeId];
+    }
+
+    // NB a NaN fails every comparison, so !(value > threshold) sends it left
+    private boolean goesLeft(int nodeId, double value) {
+        return missingGoesLeft[nodeId] ? !(value > values[nodeId]) : value <= values[nodeId];
+    }
+
+    @Override
+    double getMargin(double[] features) {
+        double margin = 0.0;
+        for (int treeId = 0; treeId < rootIds.length; treeId++) {
+            int nodeId = rootIds[treeId];
+            while (featureIds[nodeId] >= 0) {
+                boolean goesLeft = goesLeft(nodeId, features[featureIds[nodeId]]);
+                nodeId = goesLeft ? leftChildIds[nodeId] : leftChildIds[nodeId] + 1;
+            }
+            margin += values[nodeId];
+        }
+        return margin;
+    }
+
+    @Override
+    void addMargins(Data data, int beginRow, int endRow, int beginTree, int endTree, double[] margins) {
+        for (int treeId = beginTree; treeId < endTree; treeId++) {
+            int rootId = rootIds[treeId];
+            for (int row = beginRow; row < endRow; row++) {
+                int nodeId = rootId;
+                while (featureIds[nodeId] >= 0) {
+                    boolean goesLeft = goesLeft(nodeId, data.getFeatureValue(featureIds[nodeId], row));
+                    nodeId = goesLeft ? leftChildIds[nodeId] : leftChildIds[nodeId] + 1;
+                }
+                margins[row - beginRow] += values[nodeId];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,206 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Bins a CSV file for histogram training without ever holding its feature values in memory (see Data.loadBinned).
+// Two passes over the file, each parsing one chunk at a time (see CsvReader):
+// 1. each feature is sketched: a fixed-size sample of its values (rows are picked by a hash of the row id,
+//    so the sample doesn't depend on the order the chunks are parsed in), and its distinct values, for as long
+//    as there are no more than maxNumBins of them. The bin thresholds are then computed from the distinct values
+//    if there are few enough (so every gap gets an edge, exactly as in memory), otherwise from the sample.
+//    If the whole file fits in the sample, the thresholds are exactly those that FeatureBins would compute.
+//    (Missing values are left out of both, and get the missing bin.)
+// 2. the bin ids are written to a temporary file, one byte per row, feature after feature,
+//    and each feature's bytes are then memory-mapped. So the heap only holds the labels and the sketches.
+class BinnedCsvReader {
+
+    private static final int samplesPerBin = 256; // so the sample holds 256 * maxNumBins values per feature
+
+    private BinnedCsvReader() {}
+
+    // Fills in labels[row], and returns the bins. The bin ids are kept in a file alongside the CSV file,
+    // which is deleted when the JVM exits.
+    static FeatureBins read(CsvReader reader, String filepath, boolean[] labels, int maxNumBins) throws IOException {
+
+        int numFeatures = reader.getFeatureIdsToNames().length;
+        int numRows = reader.getNumRows();
+        int numChunks = reader.getNumChunks();
+        double sampleRate = Math.min(1.0, (double) samplesPerBin * maxNumBins / Math.max(numRows, 1));
+
+        // pass 1: sketch each chunk, then merge the sketches
+        double[][][] chunkSamples = new double[numChunks][][]; // [chunkId][featureId] -> sampled values
+        double[][][] chunkDistincts = new double[numChunks][][]; // [chunkId][featureId] -> distinct values, or null
+        try {
+            IntStream.range(0, numChunks).parallel().forEach(chunkId -> {
+                int chunkRows = reader.getChunkNumRows(chunkId);
+                int firstRow = reader.getChunkFirstRow(chunkId);
+                double[][] columns = new double[numFeatures][chunkRows];
+                boolean[] chunkLabels = new boolean[chunkRows];
+                reader.parseChunk(chunkId, columns, chunkLabels, 0);
+                System.arraycopy(chunkLabels, 0, labels, firstRow, chunkRows);
+
+                int[] sampledRows = IntStream.range(0, chunkRows)
+                        .filter(row -> isSampled(firstRow + row, sampleRate)).toArray();
+                chunkSamples[chunkId] = new double[numFeatures][];
+                chunkDistincts[chunkId] = new double[numFeatures][];
+                for (int featureId = 0; featureId < numFeatures; featureId++) {
+                    double[] column = columns[featureId];
+                    double[] sample = new double[sampledRows.length];
+                    int sampleSize = 0;
+                    for (int row : sampledRows) {
+                        if (!Double.isNaN(column[row])) {
+                            sample[sampleSize++] = column[row];
+                        }
+                    }
+                    chunkSamples[chunkId][featureId] = Arrays.copyOf(sample, sampleSize);
+                    chunkDistincts[chunkId][featureId] = distinctValues(column, maxNumBins);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+
+        double[][] thresholds = new double[numFeatures][];
+        IntStream.range(0, numFeatures).parallel().forEach(featureId -> {
+            double[] distinct = new double[0];
+            for (int chunkId = 0; chunkId < numChunks && distinct != null; chunkId++) {
+                distinct = mergeDistinct(distinct, chunkDistincts[chunkId][featureId], maxNumBins);
+            }
+            if (distinct != null) {
+                thresholds[featureId] = FeatureBins.computeThresholds(distinct, maxNumBins);
+            } else {
+                int sampleSize = 0;
+                for (int chunkId = 0; chunkId < numChunks; chunkId++) {
+                    sampleSize += chunkSamples[chunkId][featureId].length;
+                }
+                double[] sample = new double[sampleSize];
+                int position = 0;
+                for (int chunkId = 0; chunkId < numChunks; chunkId++) {
+                    double[] chunkSample = chunkSamples[chunkId][featureId];
+                    System.arraycopy(chunkSample, 0, sample, position, chunkSample.length);
+                    position += chunkSample.length;
+                }
+                Arrays.sort(sample);
+                thresholds[featureId] = FeatureBins.computeThresholds(sample, maxNumBins);
+            }
+        });
+        ByteBuffer[] mappedBinIds = new ByteBuffer[numFeatures]; // mapped once they've all been written
+        FeatureBins bins = new FeatureBins(thresholds, mappedBinIds);
+
+        // pass 2: bin each chunk, and write its bin ids into place
+        Path csvDirectory = Paths.get(filepath).toAbsolutePath().getParent();
+        Path binIdsPath = Files.createTempFile(csvDirectory, Paths.get(filepath).getFileName().toString(), ".binids");
+        binIdsPath.toFile().deleteOnExit();
+        try (FileChannel channel = FileChannel.open(binIdsPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            try {
+                IntStream.range(0, numChunks).parallel().forEach(chunkId -> {
+                    int chunkRows = reader.getChunkNumRows(chunkId);
+                    double[][] columns = new double[numFeatures][chunkRows];
+                    reader.parseChunk(chunkId, columns, new boolean[chunkRows], 0);
+                    byte[] featureBinIds = new byte[chunkRows];
+                    for (int featureId = 0; featureId < numFeatures; featureId++) {
+                        for (int row = 0; row < chunkRows; row++) {
+                            featureBinIds[row] = (byte) bins.findBinId(featureId, columns[featureId][row]);
+                        }
+                        long position = (long) featureId * numRows + reader.getChunkFirstRow(chunkId);
+                        writeFully(channel, ByteBuffer.wrap(featureBinIds), position);
+                    }
+                });
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+
+            // the mappings stay valid once the channel is closed
+            for (int featureId = 0; featureId < numFeatures; featureId++) {
+                mappedBinIds[featureId] = channel.map(FileChannel.MapMode.READ_ONLY, (long) featureId * numRows, numRows);
+            }
+            return bins;
+        }
+    }
+
+    // a fixed pseudo-random choice for each row (a 64-bit finaliser of the row id, as in MurmurHash3)
+    private static boolean isSampled(int row, double sampleRate) {
+        if (sampleRate >= 1.0) {
+            return true;
+        }
+        long hash = row;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (hash >>> 11) * 0x1.0p-53 < sampleRate;
+    }
+
+    // The distinct values (sorted), or null as soon as there turn out to be more than maxNumBins of them.
+    // Each value is looked for in those found so far (by binary search), and inserted if new.
+    private static double[] distinctValues(double[] values, int maxNumBins) {
+        double[] distinct = new double[maxNumBins];
+        int numDistinct = 0;
+        for (double value : values) {
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            int position = Arrays.binarySearch(distinct, 0, numDistinct, value);
+            if (position < 0 && (value != 0.0 || !containsZero(distinct, numDistinct))) {
+                if (numDistinct == maxNumBins) {
+                    return null;
+                }
+                position = -position - 1;
+                System.arraycopy(distinct, position, distinct, position + 1, numDistinct - position);
+                distinct[position] = value;
+                numDistinct++;
+            }
+        }
+        return Arrays.copyOf(distinct, numDistinct);
+    }
+
+    // Arrays.binarySearch tells -0.0 and 0.0 apart, but they count as the same value here (as with <= and !=)
+    private static boolean containsZero(double[] distinct, int numDistinct) {
+        return Arrays.binarySearch(distinct, 0, numDistinct, 0.0) >= 0
+                || Arrays.binarySearch(distinct, 0, numDistinct, -0.0) >= 0;
+    }
+
+    // the union of two sets of distinct values (both sorted), or null if either is null or the union is too big
+    private static double[] mergeDistinct(double[] valuesA, double[] valuesB, int maxNumBins) {
+        if (valuesA == null || valuesB == null) {
+            return null;
+        }
+        double[] merged = new double[valuesA.length + valuesB.length];
+        int numMerged = 0;
+        int indexA = 0;
+        int indexB = 0;
+        while (indexA < valuesA.length || indexB < valuesB.length) {
+            double next;
+            if (indexB == valuesB.length || (indexA < valuesA.length && valuesA[indexA] <= valuesB[indexB])) {
+                next = valuesA[indexA++];
+            } else {
+                next = valuesB[indexB++];
+            }
+            if (numMerged == 0 || merged[numMerged - 1] != next) {
+                merged[numMerged++] = next;
+            }
+        }
+        return (numMerged <= maxNumBins) ? Arrays.copyOf(merged, numMerged) : null;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) {
+        try {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+}
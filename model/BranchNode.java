@@ -1,7 +1,10 @@
 package model;
 
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 // represents a node that has already split
 class BranchNode extends AbstractNode {
@@ -11,23 +14,109 @@ class BranchNode extends AbstractNode {
     private AbstractNode rightNode;
     private double threshold;
     private int splittingFeatureId;
+    private boolean missingGoesLeft; // where rows missing the feature go (learned by the split)
     private double metricGain; // the entropy decrease from children minus from parent
+    private int maxBinId = -1; // with histogram splits, the last bin going left (see growChildren)
+    private GradientSums leftSums; // the sums of the children's rows, as found by the split
+    private GradientSums rightSums;
+    
+    // with histogram splits, the parent's histograms are kept alive until both children have split,
+    // so that the larger child can get its histograms by subtraction (null if not retained)
+    private Histogram[] parentHistograms = null;
+    private long retainedBytes = 0;
+    private LeafNode smallerLeaf = null; // the child which builds its own histograms
 
-    BranchNode(int depth, double threshold, int splittingFeatureId, double metricGain,
-    					List<FeatureVector> leftDatapoints, List<FeatureVector> rightDatapoints) {
+    // the children are only created (by growChildren) once this has been chosen as the best split
+    BranchNode(int depth, double threshold, int splittingFeatureId, boolean missingGoesLeft, double metricGain,
+    		GradientSums leftSums, GradientSums rightSums) {
         super(depth);
         this.threshold = threshold;
         this.splittingFeatureId = splittingFeatureId;
+        this.missingGoesLeft = missingGoesLeft;
         this.metricGain = metricGain;
-
-        leftNode = new LeafNode(this.depth + 1, leftDatapoints);
-        rightNode = new LeafNode(this.depth + 1, rightDatapoints);
+        this.leftSums = leftSums;
+        this.rightSums = rightSums;
+    }
+    
+    // marks each of the parent's rows as left or right, and creates the children
+    // (the rows are then moved into place by RowPartition.rearrange)
+    // NB with histogram splits the bins are used, so the feature values themselves aren't needed
+    // With exact splits, the children's segments of the sorted orderings are filled in by rearrange:
+    // they share the array of split points (the left child's ends, and the right child's begins).
+    void growChildren(TrainingContext context, int begin, int end, int[] sortedBegins, int[] sortedEnds) {
+    	RowPartition partition = context.getPartition();
+    	FeatureBins bins = context.getBins();
+    	int middle;
+    	int[] sortedMiddles = null;
+    	if (bins != null) {
+    		maxBinId = bins.findBinId(splittingFeatureId, threshold);
+    		middle = partition.markLeft(begin, end, bins, splittingFeatureId, maxBinId, missingGoesLeft);
+    	} else {
+    		middle = partition.markLeft(begin, end, sortedBegins[splittingFeatureId], sortedEnds[splittingFeatureId],
+    				splittingFeatureId, threshold, missingGoesLeft, context.getData().getEntryValues(splittingFeatureId),
+    				context.getData().getDefaultValue(splittingFeatureId));
+    		sortedMiddles = new int[sortedBegins.length];
+    	}
+        leftNode = new LeafNode(this.depth + 1, begin, middle, sortedBegins, sortedMiddles, leftSums);
+        rightNode = new LeafNode(this.depth + 1, middle, end, sortedMiddles, sortedEnds, rightSums);
+        leftSums = null;
+        rightSums = null;
     }
     
     double getMetricGain() {
     	return metricGain;
     }
     
+    void retainParentHistograms(Histogram[] histograms, long bytes) {
+    	parentHistograms = histograms;
+    	retainedBytes = bytes;
+    }
+    
+    // only valid until the children have been split
+    LeafNode getLeftLeaf() {
+    	return (LeafNode) leftNode;
+    }
+    
+    LeafNode getRightLeaf() {
+    	return (LeafNode) rightNode;
+    }
+    
+    // for growers which split the leaves themselves, rather than recursing via split
+    void replaceChild(LeafNode child, AbstractNode replacement) {
+    	if (leftNode == child) {
+    		leftNode = replacement;
+    	} else {
+    		rightNode = replacement;
+    	}
+    }
+    
+    // Only the smaller child scans its datapoints; the larger child gets parent minus smaller.
+    // This returns the smaller child's tasks (none, if the parent's histograms weren't retained) ...
+    List<Callable<Histogram>> createChildHistogramTasks(TrainingContext context) {
+    	if (parentHistograms == null) {
+    		return Collections.emptyList();
+    	}
+    	boolean leftIsSmaller = (getLeftLeaf().getNumDatapoints() <= getRightLeaf().getNumDatapoints());
+    	smallerLeaf = leftIsSmaller ? getLeftLeaf() : getRightLeaf();
+    	return smallerLeaf.createHistogramTasks(parentHistograms, context);
+    }
+    
+    // ... and once these have run, this gives the larger child its histograms.
+    void subtractChildHistograms() {
+    	if (parentHistograms != null) {
+    		LeafNode largerLeaf = (smallerLeaf == leftNode) ? getRightLeaf() : getLeftLeaf();
+    		largerLeaf.subtractHistograms(parentHistograms, smallerLeaf);
+    		parentHistograms = null;
+    		smallerLeaf = null;
+    	}
+    }
+    
+    // to be called once both children have been split
+    void releaseHistograms(HistogramCache cache) {
+    	cache.release(retainedBytes);
+    	retainedBytes = 0;
+    }
+    
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder(super.toString());
@@ -35,6 +124,9 @@ class BranchNode extends AbstractNode {
         builder.append(splittingFeatureId);
         builder.append(", Threshold: ");
         builder.append(String.format("%.4f", threshold));
+        if (missingGoesLeft) {
+        	builder.append(", Missing: left");
+        }
         builder.append(", Gain: ");
         builder.append(String.format("%.4f",  metricGain));
         builder.append(" {");
@@ -49,31 +141,75 @@ class BranchNode extends AbstractNode {
     // here, we (attempt to) split the children
     // (and if the children split, then we recursively attempt to split the grandchildren)
     @Override
-    AbstractNode split(Config config, FeatureSelector selector, ExecutorService exec) {
-        leftNode = leftNode.split(config, selector, exec);
-        rightNode = rightNode.split(config, selector, exec);
+    AbstractNode split(TrainingContext context) {
+    	try {
+    		for (Future<Histogram> outcome : context.getExec().invokeAll(createChildHistogramTasks(context))) {
+    			outcome.get();
+    		}
+    	} catch (ExecutionException | InterruptedException ex) {
+    		throw new RuntimeException(ex);
+    	}
+    	subtractChildHistograms();
+    	
+        leftNode = leftNode.split(context);
+        rightNode = rightNode.split(context);
+        
+        releaseHistograms(context.getCache());
 
         return this;
     }
 
+    // NB a missing (NaN) value fails every comparison, so !(value > threshold) sends it left
+    private boolean goesLeft(double featureValue) {
+    	return missingGoesLeft ? !(featureValue > threshold) : featureValue <= threshold;
+    }
+
     @Override
-    void performLogitIncrement(FeatureVector vector) {
+    double getLogitIncrement(Data data, int row) {
 
-        double featureValue = vector.getFeatureValue(splittingFeatureId);
+        double featureValue = data.getFeatureValue(splittingFeatureId, row);
 
-        if (featureValue <= threshold) {
-            leftNode.performLogitIncrement(vector);
+        if (goesLeft(featureValue)) {
+            return leftNode.getLogitIncrement(data, row);
         }
         else {
-            rightNode.performLogitIncrement(vector);
+            return rightNode.getLogitIncrement(data, row);
         }
     }
     
+    // as growChildren would send the row
+    @Override
+    LeafNode findLeaf(TrainingContext context, int row) {
+    	boolean goesLeft;
+    	if (context.getBins() != null) {
+    		int binId = context.getBins().getBinId(splittingFeatureId, row);
+    		goesLeft = (binId <= maxBinId)
+    				|| (missingGoesLeft && binId == context.getBins().getMissingBinId(splittingFeatureId));
+    	} else {
+    		goesLeft = goesLeft(context.getData().getFeatureValue(splittingFeatureId, row));
+    	}
+    	return goesLeft ? leftNode.findLeaf(context, row) : rightNode.findLeaf(context, row);
+    }
+    
     @Override
     void updateFeatureImportances(FeatureImportances importances) {
     	importances.increment(splittingFeatureId, metricGain);
     	leftNode.updateFeatureImportances(importances);
     	rightNode.updateFeatureImportances(importances);
     }
+    
+    @Override
+    int getNumNodes() {
+    	return 1 + leftNode.getNumNodes() + rightNode.getNumNodes();
+    }
+    
+    // the children go in a pair of adjacent slots, so the right child's slot is always left + 1
+    @Override
+    void flatten(ArrayForest forest, int nodeId) {
+    	int leftId = forest.allocate(2);
+    	forest.setBranch(nodeId, splittingFeatureId, threshold, missingGoesLeft, leftId);
+    	leftNode.flatten(forest, leftId);
+    	rightNode.flatten(forest, leftId + 1);
+    }
 
 }
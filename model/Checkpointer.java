@@ -0,0 +1,119 @@
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// helper class - for checkpoints (see Config.setCheckpoint and GBTModel.resume)
+// Every so many trees, the model so far is written out on a background thread, so that boosting carries on
+// meanwhile. Each checkpoint is written to a temporary file which is then moved over the last one, so if the
+// JVM dies part way through, the previous checkpoint is still whole.
+class Checkpointer {
+
+    private Path path; // null if not checkpointing
+    private int interval;
+    private ExecutorService writer = null; // a single daemon thread, started with the first checkpoint
+    private Future<Void> pending = null; // the checkpoint being written, if any
+
+    Checkpointer(Config config) {
+        if (config.getCheckpointPath() != null) {
+            path = Paths.get(config.getCheckpointPath());
+            interval = config.getCheckpointInterval();
+        }
+    }
+
+    // whether a checkpoint is due once this many trees have been grown
+    boolean isDue(int numTrees) {
+        return path != null && numTrees % interval == 0;
+    }
+
+    // Hands the checkpoint over to the background thread: save is given the path to write to.
+    // Only one checkpoint is written at a time, so this waits for the last one (if it's somehow still going),
+    // and rethrows any error it had.
+    void submit(ModelSaver save) {
+        awaitPending();
+        if (writer == null) {
+            writer = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "checkpoint-writer");
+                thread.setDaemon(true); // never keeps the JVM alive
+                return thread;
+            });
+        }
+        Callable<Void> task = () -> {
+            Path temporaryPath = Paths.get(path + ".tmp");
+            save.save(temporaryPath);
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return null;
+        };
+        pending = writer.submit(task);
+    }
+
+    // waits for the last checkpoint to be written, then stops the background thread
+    void finish() {
+        try {
+            awaitPending();
+        } finally {
+            if (writer != null) {
+                writer.shutdown();
+            }
+        }
+    }
+
+    private void awaitPending() {
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw new UncheckedIOException((IOException) ex.getCause());
+            }
+            throw new RuntimeException(ex);
+        } catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            pending = null;
+        }
+    }
+
+    interface ModelSaver {
+        void save(Path path) throws IOException;
+    }
+
+    // The state of the random generators of a training run (so that a resumed run makes the same choices as
+    // the one it replaces). java.util.Random keeps its state when serialised.
+    static byte[] saveRandomState(FeatureSelector featureSelector, RowSampler rowSampler) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(featureSelector.getGenerator());
+            out.writeObject(rowSampler.getGenerator());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex); // can't happen
+        }
+        return bytes.toByteArray();
+    }
+
+    static void restoreRandomState(byte[] state, FeatureSelector featureSelector, RowSampler rowSampler) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(state))) {
+            featureSelector.setGenerator((Random) in.readObject());
+            rowSampler.setGenerator((Random) in.readObject());
+        } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            throw new IllegalArgumentException("The checkpoint's random state is unreadable.", ex);
+        }
+    }
+
+}
@@ -1,7 +1,18 @@
 package model;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class Config {
 
+    // the order in which the nodes of each tree are split
+    public enum Growth {
+        DEPTH_FIRST, // each node is split as far as possible before its sibling is looked at
+        LEVEL_WISE, // all the nodes at one depth are split together, in parallel
+        LEAF_WISE // the leaf with the best split is always split next (see setMaxLeaves)
+    }
+
     private int minSamplesLeaf = 1;
 
     private Integer numFeaturesSplit = null; // null means infinity
@@ -19,6 +30,24 @@ public class Config {
     
     private int numThreads = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
 
+    private Integer numBins = null; // null means exact splits (no binning)
+    private static final int maxNumBins = 255;
+    
+    private int histogramCacheMB = 256; // memory for parent histograms kept for sibling subtraction
+
+    private Growth growth = Growth.DEPTH_FIRST;
+
+    private Integer maxLeaves = null; // null means no limit (only used when growing leaf-wise)
+
+    private Integer patience = null; // null means no early stopping (only used with a validation set)
+
+    private double subsample = 1.0; // the fraction of rows each tree is grown on
+    private Double gossTopRate = null; // null means no GOSS (otherwise gossOtherRate is set too)
+    private Double gossOtherRate = null;
+
+    private String checkpointPath = null; // null means no checkpoints (see GBTModel.resume)
+    private Integer checkpointInterval = null; // the number of trees between checkpoints
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
@@ -48,6 +77,38 @@ public class Config {
         	builder.append("; Min Gain: ");
         	builder.append(minGainSplit);
         }
+        if (numBins != null) {
+            builder.append("; Bins: ");
+            builder.append(numBins);
+        }
+        if (growth != Growth.DEPTH_FIRST) {
+            builder.append("; Growth: ");
+            builder.append(growth);
+        }
+        if (growth == Growth.LEAF_WISE && maxLeaves != null) {
+            builder.append("; Leaves: ");
+            builder.append(maxLeaves);
+        }
+        if (patience != null) {
+            builder.append("; Patience: ");
+            builder.append(patience);
+        }
+        if (subsample != 1.0) {
+            builder.append("; Subsample: ");
+            builder.append(subsample);
+        }
+        if (gossTopRate != null) {
+            builder.append("; GOSS: ");
+            builder.append(gossTopRate);
+            builder.append(", ");
+            builder.append(gossOtherRate);
+        }
+        if (checkpointPath != null) {
+            builder.append("; Checkpoint: ");
+            builder.append(checkpointPath);
+            builder.append(" every ");
+            builder.append(checkpointInterval);
+        }
         return builder.toString();
     }
 
@@ -83,6 +144,102 @@ public class Config {
         return numThreads;
     }
 
+    public Integer getNumBins() {
+        return numBins;
+    }
+    
+    public int getHistogramCacheMB() {
+        return histogramCacheMB;
+    }
+
+    public Growth getGrowth() {
+        return growth;
+    }
+
+    public Integer getMaxLeaves() {
+        return maxLeaves;
+    }
+
+    public Integer getPatience() {
+        return patience;
+    }
+
+    public double getSubsample() {
+        return subsample;
+    }
+
+    public Double getGossTopRate() {
+        return gossTopRate;
+    }
+
+    public Double getGossOtherRate() {
+        return gossOtherRate;
+    }
+
+    public String getCheckpointPath() {
+        return checkpointPath;
+    }
+
+    public Integer getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+
+    // for saving along with a model (see GBTModel.save); nulls are written as -1
+    // (read takes the version of the model file, as later versions have more settings)
+    // NB the checkpoint settings belong to a training run, so aren't saved
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(minSamplesLeaf);
+        out.writeInt(numFeaturesSplit != null ? numFeaturesSplit : -1);
+        out.writeInt(maxTreeDepth != null ? maxTreeDepth : -1);
+        out.writeDouble(learningRate);
+        out.writeDouble(l2reg);
+        out.writeDouble(minGainSplit);
+        out.writeInt(numTrees);
+        out.writeInt(numThreads);
+        out.writeInt(numBins != null ? numBins : -1);
+        out.writeInt(histogramCacheMB);
+        out.writeUTF(growth.name());
+        out.writeInt(maxLeaves != null ? maxLeaves : -1);
+        out.writeInt(patience != null ? patience : -1);
+        out.writeDouble(subsample);
+        out.writeDouble(gossTopRate != null ? gossTopRate : -1.0);
+        out.writeDouble(gossOtherRate != null ? gossOtherRate : -1.0);
+    }
+
+    static Config read(DataInputStream in, int version) throws IOException {
+        Config config = new Config();
+        config.minSamplesLeaf = in.readInt();
+        config.numFeaturesSplit = nullIfNegative(in.readInt());
+        config.maxTreeDepth = nullIfNegative(in.readInt());
+        config.learningRate = in.readDouble();
+        config.l2reg = in.readDouble();
+        config.minGainSplit = in.readDouble();
+        config.numTrees = in.readInt();
+        config.numThreads = in.readInt();
+        config.numBins = nullIfNegative(in.readInt());
+        config.histogramCacheMB = in.readInt();
+        config.growth = Growth.valueOf(in.readUTF());
+        config.maxLeaves = nullIfNegative(in.readInt());
+        if (version >= 2) {
+            config.patience = nullIfNegative(in.readInt());
+        }
+        if (version >= 3) {
+            config.subsample = in.readDouble();
+            config.gossTopRate = nullIfNegative(in.readDouble());
+            config.gossOtherRate = nullIfNegative(in.readDouble());
+        }
+        return config;
+    }
+
+    private static Integer nullIfNegative(int value) {
+        return (value >= 0) ? value : null;
+    }
+
+    private static Double nullIfNegative(double value) {
+        return (value >= 0.0) ? value : null;
+    }
+
 
     // *** Define builders. ***
 
@@ -178,7 +335,105 @@ public class Config {
         	return this;
         }
         
+        // if not used, then numBins = null (so we search for exact splits over the sorted feature values)
+        public Builder setNumBins(int numBins) {
+            if (numBins >= 2 && numBins <= maxNumBins) {
+                config.numBins = numBins;
+            }
+            else {
+                throw new IllegalArgumentException("Num bins must be between 2 and " + maxNumBins + ".");
+            }
+            return this;
+        }
+
+        // if not used, then 256MB; set to zero to always recompute both children's histograms
+        public Builder setHistogramCacheMB(int histogramCacheMB) {
+        	if (histogramCacheMB >= 0) {
+        		config.histogramCacheMB = histogramCacheMB;
+        	} else {
+        		throw new IllegalArgumentException("Histogram cache cannot be negative.");
+        	}
+        	return this;
+        }
+
+        // if not used, then the trees are grown depth first
+        public Builder setGrowth(Growth growth) {
+        	if (growth != null) {
+        		config.growth = growth;
+        	} else {
+        		throw new IllegalArgumentException("Growth cannot be null.");
+        	}
+        	return this;
+        }
+
+        // if not used, then maxLeaves = null (so leaf-wise trees grow until no leaf can be split)
+        // NB this also switches to leaf-wise growth
+        public Builder setMaxLeaves(int maxLeaves) {
+            if (maxLeaves >= 2) {
+                config.maxLeaves = maxLeaves;
+                config.growth = Growth.LEAF_WISE;
+            }
+            else {
+                throw new IllegalArgumentException("Cannot set max leaves less than 2.");
+            }
+            return this;
+        }
+
+        // if not used, then patience = null (so every tree is built, even when training with a validation set)
+        // otherwise training stops once this many trees in a row have failed to improve the validation log-loss
+        public Builder setPatience(int patience) {
+            if (patience >= 1) {
+                config.patience = patience;
+            }
+            else {
+                throw new IllegalArgumentException("Cannot set patience less than 1.");
+            }
+            return this;
+        }
+
+        // if not used, then subsample = 1 (so every tree is grown on all the rows)
+        // otherwise each tree is grown on a random selection of this fraction of the rows
+        public Builder setSubsample(double subsample) {
+            if (subsample > 0.0 && subsample <= 1.0) {
+                config.subsample = subsample;
+            }
+            else {
+                throw new IllegalArgumentException("Subsample must be between 0 and 1.");
+            }
+            return this;
+        }
+
+        // Gradient-based one-side sampling: each tree is grown on the topRate fraction of rows with the largest
+        // gradients, plus a random otherRate fraction of the rest (weighted up to stand in for all of the rest).
+        // If not used, then no GOSS. Can't be used together with setSubsample.
+        public Builder setGoss(double topRate, double otherRate) {
+            if (topRate >= 0.0 && otherRate > 0.0 && topRate + otherRate < 1.0) {
+                config.gossTopRate = topRate;
+                config.gossOtherRate = otherRate;
+            }
+            else {
+                throw new IllegalArgumentException("GOSS rates must be non-negative (other rate positive), and sum to less than 1.");
+            }
+            return this;
+        }
+
+        // if not used, then no checkpoints
+        // otherwise every interval trees, the model so far is saved to path (see GBTModel.resume)
+        public Builder setCheckpoint(String path, int interval) {
+            if (path != null && interval >= 1) {
+                config.checkpointPath = path;
+                config.checkpointInterval = interval;
+            }
+            else {
+                throw new IllegalArgumentException("Checkpoints need a path, and an interval of at least 1 tree.");
+            }
+            return this;
+        }
+
         public Config build() {
+            if (config.subsample != 1.0 && config.gossTopRate != null) {
+                throw new IllegalArgumentException("Cannot use both subsample and GOSS.");
+            }
             return config;
         }
     }
@@ -0,0 +1,272 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+// Hyperparameter search: trains many configs at once on the same training and validation data, and returns
+// a leaderboard of them ranked by validation log-loss.
+// The data is only read: it's presorted and binned once up front (as the configs need), and each run keeps its own
+// logits and derivatives (see TrainingRun). All the runs share one work-stealing pool, whose threads pick up the
+// tasks of whichever runs have them (every parallel step of a run goes there - see TrainingContext.parallelFor),
+// so a config's numThreads is ignored. NB its checkpoints should be left unset, as every run would write to the
+// same file.
+// With pruning, clearly losing runs are stopped early by the median stopping rule: every so many trees, a run stops
+// if its best validation log-loss so far is worse than the median of the earlier runs' (in the order of the configs)
+// at the same progress - that is, after as many trees times learning rate, so that a config with a low learning rate
+// isn't judged against the others while it's bound to be behind them. A run waits for the earlier runs to get that
+// far, so which runs are pruned doesn't depend on how the threads happen to be scheduled.
+// (Training itself may still vary between calls, unless the configs are deterministic.)
+/* EXAMPLE:
+ * List<Config> configs = ConfigSearch.grid(() -> Config.builder().setNumTrees(500).setMinSamplesLeaf(25),
+ *         ConfigSearch.Dimension.of(Config.Builder::setMaxTreeDepth, 4, 6, 8),
+ *         ConfigSearch.Dimension.of(Config.Builder::setLearningRate, 0.05, 0.1));
+ * List<SearchResult> leaderboard = new ConfigSearch(train, validation).setPruning(50).run(configs);
+ */
+public class ConfigSearch {
+
+    private static final int minRunsCompared = 3; // including the run itself, before any run is pruned
+
+    private Data train;
+    private Data validation;
+    private int numThreads = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
+    private Integer graceTrees = null; // null means no pruning
+
+    public ConfigSearch(Data train, Data validation) {
+        if (validation == null || validation == train) {
+            throw new IllegalArgumentException("A search needs validation data, different from the training data.");
+        }
+        this.train = train;
+        this.validation = validation;
+    }
+
+    // if not used, then one fewer than the number of cores (as in Config)
+    // this is the size of the shared pool, and also the most runs trained at once
+    public ConfigSearch setNumThreads(int numThreads) {
+        if (numThreads >= 1) {
+            this.numThreads = numThreads;
+        } else {
+            throw new IllegalArgumentException("Must have at least one thread.");
+        }
+        return this;
+    }
+
+    // if not used, then every run is trained in full (or until its own early stopping, if it has patience)
+    // otherwise runs are compared (and may be pruned) each time they have a multiple of this many trees
+    public ConfigSearch setPruning(int graceTrees) {
+        if (graceTrees >= 1) {
+            this.graceTrees = graceTrees;
+        } else {
+            throw new IllegalArgumentException("Cannot set grace trees less than 1.");
+        }
+        return this;
+    }
+
+    // Trains every config, returning their results best first (by validation log-loss).
+    public List<SearchResult> run(List<Config> configs) {
+
+        LossCurves curves = new LossCurves(configs);
+        ForkJoinPool exec = new ForkJoinPool(numThreads); // shared by every run's tasks
+        // each run is driven from a thread of its own, which mostly waits for its tasks in exec
+        // (so that a run never ends up waiting for another's tasks, as it might inside the work-stealing pool)
+        // The runs are started in order, so an earlier run is always under way by the time a later one waits for it.
+        ExecutorService drivers = Executors.newFixedThreadPool(numThreads);
+        try {
+            // prepared once, before any run needs them (they're then shared by every run)
+            exec.submit(() -> {
+                for (Config config : configs) {
+                    if (config.getNumBins() == null) {
+                        train.getSortedEntryIds();
+                    } else {
+                        train.getBins(config.getNumBins());
+                    }
+                }
+            }).join();
+
+            List<Callable<SearchResult>> runs = new ArrayList<>();
+            for (int runId = 0; runId < configs.size(); runId++) {
+                int id = runId;
+                runs.add(() -> train(id, configs.get(id), exec, curves));
+            }
+            List<SearchResult> leaderboard = new ArrayList<>(configs.size());
+            for (Future<SearchResult> outcome : drivers.invokeAll(runs)) {
+                leaderboard.add(outcome.get());
+            }
+            leaderboard.sort(Comparator.comparingDouble(result -> result.getEvaluation().getLogLoss()));
+            return leaderboard;
+        } catch (ExecutionException | InterruptedException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            drivers.shutdown();
+            exec.shutdown();
+        }
+    }
+
+    private SearchResult train(int runId, Config config, ForkJoinPool exec, LossCurves curves) {
+        long start = System.currentTimeMillis();
+        TrainingRun.Monitor monitor = (graceTrees != null)
+                ? (numTrees, loss) -> curves.keepGoing(runId, numTrees, loss) : null;
+        TrainingRun run;
+        try {
+            run = GBTModel.boost(config, train, validation, null, config.getNumTrees(), null, exec, monitor);
+        } finally {
+            curves.finish(runId); // however it ended, so that no later run waits for it
+        }
+        long trainMillis = System.currentTimeMillis() - start;
+        Evaluation evaluation = validation.evaluate(run.getValidationLogits(), new double[0]);
+        return new SearchResult(config, run.getModel(), evaluation, run.wasStopped(), trainMillis);
+    }
+
+    // The best validation log-loss that each run had reached after each number of trees, for pruning
+    // (the runs report as they go, from their own threads)
+    private class LossCurves {
+
+        private double[][] bestLosses; // [runId][numTrees - 1]
+        private double[] learningRates;
+        private int[] numReported;
+        private boolean[] finished;
+
+        LossCurves(List<Config> configs) {
+            bestLosses = new double[configs.size()][];
+            learningRates = new double[configs.size()];
+            for (int runId = 0; runId < configs.size(); runId++) {
+                bestLosses[runId] = new double[configs.get(runId).getNumTrees()];
+                learningRates[runId] = configs.get(runId).getLearningRate();
+            }
+            numReported = new int[configs.size()];
+            finished = new boolean[configs.size()];
+        }
+
+        synchronized void finish(int runId) {
+            finished[runId] = true;
+            notifyAll();
+        }
+
+        synchronized boolean keepGoing(int runId, int numTrees, double loss) {
+            double bestLoss = (numTrees > 1) ? Math.min(loss, bestLosses[runId][numTrees - 2]) : loss;
+            bestLosses[runId][numTrees - 1] = bestLoss;
+            numReported[runId] = numTrees;
+            notifyAll();
+            if (numTrees % graceTrees != 0) {
+                return true;
+            }
+
+            // each earlier run at the same progress (if it gets that far - a run which stops short is left out)
+            double[] others = new double[runId];
+            int numOthers = 0;
+            for (int otherId = 0; otherId < runId; otherId++) {
+                int otherTrees = Math.max(1,
+                        (int) Math.round(numTrees * (learningRates[runId] / learningRates[otherId])));
+                if (otherTrees > bestLosses[otherId].length) {
+                    continue;
+                }
+                try {
+                    while (numReported[otherId] < otherTrees && !finished[otherId]) {
+                        wait();
+                    }
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                if (numReported[otherId] >= otherTrees) {
+                    others[numOthers++] = bestLosses[otherId][otherTrees - 1];
+                }
+            }
+            if (numOthers + 1 < minRunsCompared) {
+                return true;
+            }
+            Arrays.sort(others, 0, numOthers);
+            double median = (numOthers % 2 == 1) ? others[numOthers / 2]
+                    : (others[numOthers / 2 - 1] + others[numOthers / 2]) / 2.0;
+            return bestLoss <= median;
+        }
+    }
+
+
+    // *** For making the configs to search. ***
+
+    // one setting to search over: the builder's setter (e.g. Config.Builder::setMaxTreeDepth), and the values to try
+    public static class Dimension<T> {
+
+        private BiConsumer<Config.Builder, T> setter;
+        private List<T> values;
+
+        private Dimension(BiConsumer<Config.Builder, T> setter, List<T> values) {
+            this.setter = setter;
+            this.values = values;
+        }
+
+        @SafeVarargs
+        public static <T> Dimension<T> of(BiConsumer<Config.Builder, T> setter, T... values) {
+            if (values.length == 0) {
+                throw new IllegalArgumentException("A dimension needs at least one value.");
+            }
+            List<T> copies = new ArrayList<>(values.length);
+            for (T value : values) {
+                copies.add(value);
+            }
+            return new Dimension<>(setter, copies);
+        }
+
+        int getNumValues() {
+            return values.size();
+        }
+
+        void apply(Config.Builder builder, int valueId) {
+            setter.accept(builder, values.get(valueId));
+        }
+    }
+
+    // Every combination of the dimensions' values (the last dimension varying fastest), each applied to a builder
+    // from base (which holds the settings common to them all)
+    public static List<Config> grid(Supplier<Config.Builder> base, Dimension<?>... dimensions) {
+        List<Config> configs = new ArrayList<>();
+        int[] valueIds = new int[dimensions.length];
+        while (true) {
+            configs.add(build(base, dimensions, valueIds));
+            // next combination, like an odometer
+            int dimensionId = dimensions.length - 1;
+            while (dimensionId >= 0 && ++valueIds[dimensionId] == dimensions[dimensionId].getNumValues()) {
+                valueIds[dimensionId] = 0;
+                dimensionId--;
+            }
+            if (dimensionId < 0) {
+                return configs;
+            }
+        }
+    }
+
+    // As grid, but numConfigs random combinations (each value of each dimension equally likely),
+    // the same ones every time for the same seed
+    public static List<Config> sample(Supplier<Config.Builder> base, int numConfigs, long seed,
+            Dimension<?>... dimensions) {
+        Random generator = new Random(seed);
+        List<Config> configs = new ArrayList<>(numConfigs);
+        int[] valueIds = new int[dimensions.length];
+        for (int configId = 0; configId < numConfigs; configId++) {
+            for (int dimensionId = 0; dimensionId < dimensions.length; dimensionId++) {
+                valueIds[dimensionId] = generator.nextInt(dimensions[dimensionId].getNumValues());
+            }
+            configs.add(build(base, dimensions, valueIds));
+        }
+        return configs;
+    }
+
+    private static Config build(Supplier<Config.Builder> base, Dimension<?>[] dimensions, int[] valueIds) {
+        Config.Builder builder = base.get();
+        for (int dimensionId = 0; dimensionId < dimensions.length; dimensionId++) {
+            dimensions[dimensionId].apply(builder, valueIds[dimensionId]);
+        }
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,261 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Reads a CSV file in the format of Data.load straight from bytes.
+// The file is cut into chunks at line boundaries, whose rows are counted in parallel when the reader is opened
+// (so that every chunk knows which rows it holds). The chunks can then be parsed in any order, or in parallel,
+// each one being memory-mapped and parsed straight into the given arrays. Numbers are parsed without creating
+// any Strings (see NumberParser). An empty cell is a missing value (NaN).
+class CsvReader implements AutoCloseable {
+
+    private static final int chunkBytes = 8 << 20;
+
+    private FileChannel channel;
+    private int numCols; // including the label
+    private int labelIndex;
+    private String[] featureIdsToNames;
+    private long[] chunkStarts; // chunk i is the bytes [chunkStarts[i], chunkStarts[i + 1])
+    private int[] chunkFirstRows; // and holds the rows [chunkFirstRows[i], chunkFirstRows[i + 1])
+    private ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[0]); // see copyOf
+
+    String[] getFeatureIdsToNames() { return featureIdsToNames; }
+    int getNumRows() { return chunkFirstRows[chunkFirstRows.length - 1]; }
+    int getNumChunks() { return chunkStarts.length - 1; }
+    int getChunkFirstRow(int chunkId) { return chunkFirstRows[chunkId]; }
+    int getChunkNumRows(int chunkId) { return chunkFirstRows[chunkId + 1] - chunkFirstRows[chunkId]; }
+
+    CsvReader(String filepath, String labelName) throws IOException {
+
+        channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ);
+        try {
+            long fileSize = channel.size();
+            byte[] headerBytes = readLine(channel, 0);
+            String[] fullHeaderWords = new String(headerBytes, StandardCharsets.UTF_8).split(",");
+            numCols = fullHeaderWords.length;
+            labelIndex = Arrays.asList(fullHeaderWords).indexOf(labelName);
+
+            if (labelIndex == -1)
+                throw new ArrayIndexOutOfBoundsException("Label field does not exist.");
+
+            featureIdsToNames = new String[fullHeaderWords.length - 1];
+            int targetCol = 0;
+            for (int col = 0; col < fullHeaderWords.length; col++) {
+                if (col != labelIndex) {
+                    featureIdsToNames[targetCol] = fullHeaderWords[col];
+                    targetCol++;
+                }
+            }
+
+            // the chunks begin at the first line starting at (or after) each multiple of chunkBytes
+            long dataStart = findLineStart(channel, 1, 0); // just after the header line's ending
+            int numChunks = (int) Math.max((fileSize - dataStart + chunkBytes - 1) / chunkBytes, 1);
+            chunkStarts = new long[numChunks + 1];
+            for (int chunkId = 0; chunkId < numChunks; chunkId++) {
+                chunkStarts[chunkId] = findLineStart(channel, dataStart + (long) chunkId * chunkBytes, dataStart);
+            }
+            chunkStarts[numChunks] = fileSize;
+
+            chunkFirstRows = new int[numChunks + 1];
+            IntStream.range(0, numChunks).parallel().forEach(chunkId -> {
+                ByteBuffer chunk = map(chunkId);
+                chunkFirstRows[chunkId + 1] = countLines(copyOf(chunk), chunk.limit());
+            });
+            for (int chunkId = 0; chunkId < numChunks; chunkId++) {
+                chunkFirstRows[chunkId + 1] += chunkFirstRows[chunkId];
+            }
+        } catch (UncheckedIOException ex) {
+            channel.close();
+            throw ex.getCause();
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    // parses the whole file into columns[featureId][row] and labels[row], in parallel
+    void readAll(double[][] columns, boolean[] labels) throws IOException {
+        try {
+            IntStream.range(0, getNumChunks()).parallel().forEach(chunkId -> {
+                parseChunk(chunkId, columns, labels, chunkFirstRows[chunkId]);
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    // As readAll, but only keeps the values other than defaultValue (see SparseColumn): each chunk collects its own
+    // entries, and these are then joined up, feature by feature.
+    SparseColumn[] readAllSparse(boolean[] labels, double defaultValue) throws IOException {
+        int numFeatures = featureIdsToNames.length;
+        SparseColumn.Builder[][] chunkEntries = new SparseColumn.Builder[numFeatures][getNumChunks()];
+        try {
+            IntStream.range(0, getNumChunks()).parallel().forEach(chunkId -> {
+                SparseColumn.Builder[] entries = new SparseColumn.Builder[numFeatures];
+                for (int featureId = 0; featureId < numFeatures; featureId++) {
+                    entries[featureId] = new SparseColumn.Builder(defaultValue);
+                    chunkEntries[featureId][chunkId] = entries[featureId];
+                }
+                ByteBuffer chunk = map(chunkId);
+                parseChunk(copyOf(chunk), chunk.limit(), null, entries, labels, chunkFirstRows[chunkId]);
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        SparseColumn[] sparseColumns = new SparseColumn[numFeatures];
+        IntStream.range(0, numFeatures).parallel().forEach(featureId -> {
+            sparseColumns[featureId] = SparseColumn.concatenate(chunkEntries[featureId], defaultValue);
+            chunkEntries[featureId] = null; // clears memory
+        });
+        return sparseColumns;
+    }
+
+    // Parses the rows of one chunk into columns and labels, starting from position firstRow of those arrays.
+    // Any IOException is rethrown as an UncheckedIOException (for use within streams).
+    void parseChunk(int chunkId, double[][] columns, boolean[] labels, int firstRow) {
+        ByteBuffer chunk = map(chunkId);
+        parseChunk(copyOf(chunk), chunk.limit(), columns, null, labels, firstRow);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // the first line, without its line ending
+    private static byte[] readLine(FileChannel channel, long position) throws IOException {
+        long end = findLineStart(channel, position + 1, position);
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - position));
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+            // keep reading
+        }
+        int length = buffer.position();
+        while (length > 0 && (buffer.get(length - 1) == '\n' || buffer.get(length - 1) == '\r')) {
+            length--;
+        }
+        return Arrays.copyOf(buffer.array(), length);
+    }
+
+    // the position of the first line which starts at or after position (or the end of the file)
+    private static long findLineStart(FileChannel channel, long position, long dataStart) throws IOException {
+        if (position <= dataStart) {
+            return dataStart;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long current = position - 1; // if this is the end of a line, then position is the start of the next
+        while (true) {
+            buffer.clear();
+            int numRead = channel.read(buffer, current);
+            if (numRead <= 0) {
+                return channel.size();
+            }
+            for (int index = 0; index < numRead; index++) {
+                if (buffer.get(index) == '\n') {
+                    return current + index + 1;
+                }
+            }
+            current += numRead;
+        }
+    }
+
+    private ByteBuffer map(int chunkId) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, chunkStarts[chunkId],
+                    chunkStarts[chunkId + 1] - chunkStarts[chunkId]);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // Copies the chunk into this thread's buffer (the first chunk.limit() bytes of the returned array).
+    // Reading from a byte[] is much quicker than reading a ByteBuffer byte by byte, and the bulk copy is cheap.
+    private byte[] copyOf(ByteBuffer chunk) {
+        byte[] bytes = buffers.get();
+        if (bytes.length < chunk.limit()) {
+            bytes = new byte[chunk.limit()];
+            buffers.set(bytes);
+        }
+        chunk.get(0, bytes, 0, chunk.limit());
+        return bytes;
+    }
+
+    // the number of lines in bytes[0, limit), counting a final line with no line ending
+    // (so the file's own final line ending doesn't make an extra line, but any other empty line counts)
+    private static int countLines(byte[] bytes, int limit) {
+        int numLines = 0;
+        int lineStart = 0;
+        for (int index = 0; index < limit; index++) {
+            if (bytes[index] == '\n') {
+                numLines++;
+                lineStart = index + 1;
+            }
+        }
+        return (lineStart < limit) ? numLines + 1 : numLines;
+    }
+
+    // fills in the rows from firstRow onwards, one per line of bytes[0, limit)
+    // (the values go into columns, or else only those other than the default go into entries)
+    // An empty line is parsed like any other, so fails (as before) for having no label or too few columns.
+    private void parseChunk(byte[] bytes, int limit, double[][] columns, SparseColumn.Builder[] entries,
+            boolean[] labels, int firstRow) {
+        int row = firstRow;
+        int position = 0;
+        while (position < limit) {
+            int lineEnd = position;
+            while (lineEnd < limit && bytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            while (contentEnd > position && bytes[contentEnd - 1] == '\r') {
+                contentEnd--;
+            }
+            parseLine(bytes, position, contentEnd, columns, entries, labels, row);
+            row++;
+            position = lineEnd + 1;
+        }
+    }
+
+    // NB (as before) any columns beyond those in the header are ignored
+    private void parseLine(byte[] bytes, int begin, int end, double[][] columns, SparseColumn.Builder[] entries,
+            boolean[] labels, int row) {
+        int fieldBegin = begin;
+        int targetCol = 0;
+        for (int col = 0; col < numCols; col++) {
+            if (fieldBegin > end) {
+                throw new ArrayIndexOutOfBoundsException("Found a row with fewer columns than the header.");
+            }
+            int fieldEnd = fieldBegin;
+            while (fieldEnd < end && bytes[fieldEnd] != ',') {
+                fieldEnd++;
+            }
+            if (col == labelIndex) {
+                // parsing label with error-handling
+                int labelAsInt = NumberParser.parseInt(bytes, fieldBegin, fieldEnd);
+                if (labelAsInt == 1)
+                    labels[row] = true;
+                else if (labelAsInt == 0)
+                    labels[row] = false;
+                else
+                    throw new NumberFormatException("Labels must be 1 or 0.");
+            } else {
+                double value = (fieldEnd == fieldBegin) ? Double.NaN : NumberParser.parseDouble(bytes, fieldBegin, fieldEnd);
+                if (columns != null) {
+                    columns[targetCol][row] = value;
+                } else {
+                    entries[targetCol].add(row, value); // skipped if it's the default
+                }
+                targetCol++;
+            }
+            fieldBegin = fieldEnd + 1;
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+// Writes CSV output through a reusable byte buffer, formatting numbers straight into it.
+// The output is exactly that of Double.toString and String.format("%.Nf") (with '.' as the decimal point),
+// but the common cases are formatted without creating any Strings; anything else is handed over to those methods.
+class CsvWriter implements AutoCloseable {
+
+    private static final int bufferBytes = 1 << 16;
+    private static final double[] powersOfTen = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9 };
+
+    private OutputStream out;
+    private byte[] buffer = new byte[bufferBytes];
+    private int position = 0;
+
+    CsvWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    void writeString(String value) throws IOException {
+        for (int index = 0; index < value.length(); index++) {
+            writeChar(value.charAt(index));
+        }
+    }
+
+    // NB only for ASCII characters (as are all the numbers written here)
+    void writeChar(char value) throws IOException {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    void writeComma() throws IOException {
+        writeChar(',');
+    }
+
+    void endLine() throws IOException {
+        writeChar('\n');
+    }
+
+    // As Double.toString. Values from 0.001 up to 10000 with at most 3 decimal places (the usual CSV values)
+    // are written directly: every such value has been checked to give the same output as Double.toString.
+    void writeDouble(double value) throws IOException {
+        double magnitude = Math.abs(value);
+        if (magnitude >= 1e-3 && magnitude < 1e4) {
+            for (int decimals = 1; decimals <= 3; decimals++) {
+                long digits = Math.round(magnitude * powersOfTen[decimals]);
+                if (digits / powersOfTen[decimals] == magnitude) {
+                    // the fewest decimal places that give back the same double (as Double.toString looks for)
+                    if (value < 0) {
+                        writeChar('-');
+                    }
+                    writeDecimal(digits, decimals, false);
+                    return;
+                }
+            }
+        }
+        writeString(Double.toString(value));
+    }
+
+    // As String.format(Locale.ROOT, "%.<decimals>f", value), for up to 9 decimal places.
+    // Formatter rounds the digits of Double.toString half-up; unless the value is (very nearly) halfway between
+    // two outputs, that's the same as rounding the value itself, which is done directly here.
+    void writeFixed(double value, int decimals) throws IOException {
+        double scaled = value * powersOfTen[decimals];
+        if (scaled >= 0.0 && scaled < 1e9) {
+            long whole = (long) scaled;
+            double fraction = scaled - whole;
+            if (Math.abs(fraction - 0.5) > 1e-6) {
+                writeDecimal((fraction > 0.5) ? whole + 1 : whole, decimals, true);
+                return;
+            }
+        }
+        writeString(String.format(Locale.ROOT, "%." + decimals + "f", value));
+    }
+
+    // digits / 10^decimals, with trailing zeros after the point dropped unless keepZeros (but always one digit)
+    private void writeDecimal(long digits, int decimals, boolean keepZeros) throws IOException {
+        long scale = (long) powersOfTen[decimals];
+        writeLong(digits / scale);
+        writeChar('.');
+        long fraction = digits % scale;
+        int numWritten = decimals;
+        if (!keepZeros) {
+            while (numWritten > 1 && fraction % 10 == 0) {
+                fraction /= 10;
+                numWritten--;
+            }
+        }
+        for (long divisor = (long) powersOfTen[numWritten - 1]; divisor > 0; divisor /= 10) {
+            writeChar((char) ('0' + (fraction / divisor) % 10));
+        }
+    }
+
+    // for non-negative values
+    private void writeLong(long value) throws IOException {
+        long divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            writeChar((char) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+}
@@ -1,196 +1,421 @@
 package model;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.stream.IntStream;
 
 // can be used both for training and validating
 // (convenient if you want to validate on the trainset...)
+// Stored column by column: rows are referred to by their index.
 public class Data {
 
-    private List<FeatureVector> featureVectors;
+    private double[][] columns; // columns[featureId][row] (null if loaded with loadBinned)
+    private SparseColumn[] sparseColumns = null;
+    // only with loadSparse: the features held sparse (whose slots in columns are null), and null for the rest
+    private boolean[] labels;
+    private double[] logits; // those of the last train or predict (see GBTModel)
     private String[] featureIdsToNames;
-    private boolean fitted = false;
-    // will be true if either it has been used for training or for validation
+    private GBTModel fittedBy = null; // the model whose logits these are (null if none yet)
+    private int[][] sortedEntryIds = null;
+    // for exact splits - computed the first time it's needed, then reused by every tree (and every model)
+    private Map<Integer, FeatureBins> binsByNumBins = new TreeMap<>();
+    // likewise for histogram splits, keyed by the max num bins (also kept in binary data files)
+    private String labelName;
+    private static final double maxSparseDensity = 0.5; // see loadSparse
+    private long sourceSize = -1; // if loaded with loadCached, the size and last-modified time of the CSV file
+    private long sourceModified = -1;
 
-    List<FeatureVector> getFeatureVectors() { return featureVectors; }
+    int getNumRows() { return labels.length; }
     int getNumFeatures() { return featureIdsToNames.length; }
     String getFeatureName(int featureId) { return featureIdsToNames[featureId]; }
-    
+    boolean getLabel(int row) { return labels[row]; }
+    double getLogit(int row) { return logits[row]; }
+    boolean isSparse(int featureId) { return columns[featureId] == null; }
+
+    // NaN if the value is missing
+    double getFeatureValue(int featureId, int row) {
+        double[] column = columns[featureId];
+        return (column != null) ? column[row] : sparseColumns[featureId].getValue(row);
+    }
+
+    // Each feature's values as entries: for a dense column, entry i is simply row i (and may be NaN);
+    // for a sparse column, entry i is row getEntryRows(featureId)[i], and the rows with no entry all have
+    // getDefaultValue(featureId) (see SparseColumn).
+    double[] getEntryValues(int featureId) {
+        return isSparse(featureId) ? sparseColumns[featureId].getValues() : columns[featureId];
+    }
+
+    // null for a dense column
+    int[] getEntryRows(int featureId) {
+        return isSparse(featureId) ? sparseColumns[featureId].getRows() : null;
+    }
+
+    // NaN (missing) for a dense column, every row of which is an entry
+    double getDefaultValue(int featureId) {
+        return isSparse(featureId) ? sparseColumns[featureId].getDefaultValue() : Double.NaN;
+    }
+
+    // the logits are set by train and predict, and taken up again by continueTraining (see GBTModel)
+    double[] copyLogits() { return logits.clone(); }
+    void setLogits(double[] logits) { this.logits = logits; }
+
+    // false if only the bins were loaded (see loadBinned)
+    boolean hasColumns() { return columns != null; }
+
+    // sortedEntryIds[featureId] lists the feature's entries in ascending order of value,
+    // leaving out any missing values (so for a sparse column, only its entries are sorted) - except that a sparse
+    // column with a numeric default keeps its missing entries, at the end (as these are all that say which rows
+    // are missing, rather than the default)
+    synchronized int[][] getSortedEntryIds() {
+        requireColumns("exact splits");
+        if (sortedEntryIds == null) {
+            int[][] sorted = new int[columns.length][];
+            IntStream.range(0, columns.length).parallel()
+                    .forEach(featureId -> {sorted[featureId] = argsort(getEntryValues(featureId),
+                            !Double.isNaN(getDefaultValue(featureId)));});
+            sortedEntryIds = sorted;
+        }
+        return sortedEntryIds;
+    }
+
+    // quantile bins for each feature, computed the first time they're needed
+    // (NB only held in memory: they're written to file by saveBinary, or kept in the cache by loadCached)
+    synchronized FeatureBins getBins(int maxNumBins) {
+        FeatureBins bins = binsByNumBins.get(maxNumBins);
+        if (bins == null) {
+            if (!hasColumns()) {
+                throw new IllegalArgumentException("This data was binned with " + binsByNumBins.keySet()
+                        + " max bins when loaded, so can't be trained with " + maxNumBins + ".");
+            }
+            bins = new FeatureBins(this, maxNumBins);
+            binsByNumBins.put(maxNumBins, bins);
+        }
+        return bins;
+    }
+
+    // Returns the indices (rows, or entries) in ascending order of value (equal values stay in index order),
+    // leaving out the NaNs, or else putting them at the end (in index order) if keepMissing.
+    // Sorts the primitive values, then places each row at the position of the first occurrence of its value.
+    private static int[] argsort(double[] column, boolean keepMissing) {
+        double[] sortedValues = column.clone();
+        Arrays.sort(sortedValues); // NaNs go to the end
+        int numPresent = sortedValues.length;
+        while (numPresent > 0 && Double.isNaN(sortedValues[numPresent - 1])) {
+            numPresent--;
+        }
+
+        int[] sortedRows = new int[keepMissing ? column.length : numPresent];
+        int[] numPlaced = new int[numPresent]; // indexed by first position of each value
+        int numMissing = 0;
+        for (int row = 0; row < column.length; row++) {
+            if (Double.isNaN(column[row])) {
+                if (keepMissing) {
+                    sortedRows[numPresent + numMissing++] = row;
+                }
+                continue;
+            }
+            // binary search for the first position holding this value
+            int low = 0;
+            int high = numPresent;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (sortedValues[middle] < column[row]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            sortedRows[low + numPlaced[low]] = row;
+            numPlaced[low]++;
+        }
+        return sortedRows;
+    }
+
+    double getProb(int row) {
+        // apply logistic function
+        double expLogit = Math.exp(logits[row]);
+        return expLogit / (1.0 + expLogit);
+    }
+
+    // the feature values are needed for everything but histogram training
+    void requireColumns(String purpose) {
+        if (!hasColumns()) {
+            throw new IllegalStateException("This data was loaded with loadBinned, so has no feature values for "
+                    + purpose + ".");
+        }
+    }
+
     @Override
     public String toString() {
-        StringBuilder builder = new StringBuilder();
-        for (int i = 0; i < featureIdsToNames.length; i++) {
-            builder.append(featureIdsToNames[i]);
-            if (i < featureIdsToNames.length - 1)
-                builder.append(",");
-            else
-                builder.append(",");
-        }
-        builder.append("Label,Prob");
-        builder.append("\n");
-        for (FeatureVector vector : featureVectors) {
-            builder.append(vector.toString());
-            builder.append("\n");
-        }
-        return builder.toString();
-    }
-    
-    private Data(List<FeatureVector> featureVectors, String[] featureIdsToNames) {
-        this.featureVectors = featureVectors;
+        requireColumns("printing");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (CsvWriter writer = new CsvWriter(bytes)) {
+            writeHeader(writer, featureIdsToNames);
+            writeRows(writer, allFeatureIds(), 0, labels.length);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex); // can't happen
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    // the header line of save: the names of the features written, then Label,Prob
+    static void writeHeader(CsvWriter writer, String[] featureNames) throws IOException {
+        for (String featureName : featureNames) {
+            writer.writeString(featureName);
+            writer.writeComma();
+        }
+        writer.writeString("Label,Prob");
+        writer.endLine();
+    }
+
+    // the lines of save for the rows [beginRow, endRow), with the values of the given features
+    void writeRows(CsvWriter writer, int[] featureIds, int beginRow, int endRow) throws IOException {
+        for (int row = beginRow; row < endRow; row++) {
+            for (int featureId : featureIds) {
+                double value = getFeatureValue(featureId, row);
+                if (!Double.isNaN(value)) {
+                    writer.writeDouble(value); // a missing value is left empty
+                }
+                writer.writeComma();
+            }
+            writer.writeChar(labels[row] ? '1' : '0');
+            writer.writeComma();
+            writer.writeFixed(getProb(row), 3);
+            writer.endLine();
+        }
+    }
+
+    int[] allFeatureIds() {
+        return IntStream.range(0, featureIdsToNames.length).toArray();
+    }
+
+    // (also used by GBTModel.scoreFile, for each chunk of the file)
+    Data(double[][] columns, boolean[] labels, String[] featureIdsToNames, String labelName) {
+        this.columns = columns;
+        this.labels = labels;
+        this.logits = new double[labels.length];
         this.featureIdsToNames = featureIdsToNames;
-        this.fitted = false;
+        this.labelName = labelName;
     }
 
     // File must contain Label column as well as feature columns
-    // All features must be numeric. Nulls are NOT allowed.
+    // All features must be numeric. An empty cell (or NaN) is a missing value.
 
     /* EXAMPLE FORMAT:
     * Label,FeatureA,FeatureB,FeatureC
     * 1,52.4,0.98,-1.77
-    * 0,999.9,0.42,3.8
+    * 0,999.9,,3.8
     */
-    @SuppressWarnings("resource")
-	public static Data load(String filepath, String labelName) throws IOException {
+    // Parsed in parallel, straight from the bytes of the file (see CsvReader)
+    public static Data load(String filepath, String labelName) throws IOException {
+        try (CsvReader reader = new CsvReader(filepath, labelName)) {
+            double[][] columns = new double[reader.getFeatureIdsToNames().length][reader.getNumRows()];
+            boolean[] labels = new boolean[reader.getNumRows()];
+            reader.readAll(columns, labels);
+            return new Data(columns, labels, reader.getFeatureIdsToNames(), labelName);
+        }
+    }
+
+    // As load, but every feature with fewer than half of its values present is held as a SparseColumn,
+    // keeping only those values (for files with many mostly-empty columns). The chunks of the file collect just
+    // the values present, so a sparse feature is never held in full.
+    // Splits on sparse features only look at the rows with values (the rest being missing).
+    public static Data loadSparse(String filepath, String labelName) throws IOException {
+        return loadSparse(filepath, labelName, Double.NaN, maxSparseDensity);
+    }
+
+    // As above, but the value left out of sparse features is defaultValue instead of missing: e.g. 0.0, for a file
+    // of counts or one-hot columns that are mostly zeros (any empty cells then being held as entries, with NaN).
+    // A feature is held sparse if fewer than maxDensity of its rows differ from defaultValue.
+    // Splits on sparse features only look at the entries: the rows with the default are taken together, from
+    // the node's sums (so a split costs about as much as the node has entries, rather than rows).
+    public static Data loadSparse(String filepath, String labelName, double defaultValue, double maxDensity)
+            throws IOException {
+        if (Double.isInfinite(defaultValue)) {
+            throw new IllegalArgumentException("The default value must be a number, or NaN for missing.");
+        }
+        if (!(maxDensity > 0.0 && maxDensity <= 1.0)) {
+            throw new IllegalArgumentException("Max density must be above 0 and at most 1.");
+        }
+        try (CsvReader reader = new CsvReader(filepath, labelName)) {
+            int numRows = reader.getNumRows();
+            boolean[] labels = new boolean[numRows];
+            SparseColumn[] sparseColumns = reader.readAllSparse(labels, defaultValue);
+            double[][] columns = new double[sparseColumns.length][];
+            for (int featureId = 0; featureId < sparseColumns.length; featureId++) {
+                if (sparseColumns[featureId].getNumEntries() >= maxDensity * numRows) {
+                    columns[featureId] = sparseColumns[featureId].toDense(numRows);
+                    sparseColumns[featureId] = null;
+                }
+            }
+            Data data = new Data(columns, labels, reader.getFeatureIdsToNames(), labelName);
+            data.sparseColumns = sparseColumns;
+            return data;
+        }
+    }
 
-        BufferedReader reader = new BufferedReader(new FileReader(filepath));
+    // For training on files too big for memory: reads the CSV file twice, but only ever holds a chunk of it at a
+    // time, keeping just the labels and each feature's bin ids (a byte per row, in a memory-mapped temporary file).
+    // The thresholds are found from a sample of each feature (see BinnedCsvReader), so may differ slightly from
+    // those of load for files of more than 256 * maxNumBins rows.
+    // The result can only be used for training with config.setNumBins(maxNumBins), not for predicting.
+    public static Data loadBinned(String filepath, String labelName, int maxNumBins) throws IOException {
+        if (maxNumBins < 2 || maxNumBins > 255) {
+            throw new IllegalArgumentException("Num bins must be between 2 and 255.");
+        }
+        try (CsvReader reader = new CsvReader(filepath, labelName)) {
+            boolean[] labels = new boolean[reader.getNumRows()];
+            FeatureBins bins = BinnedCsvReader.read(reader, filepath, labels, maxNumBins);
+            Data data = new Data(null, labels, reader.getFeatureIdsToNames(), labelName);
+            data.binsByNumBins.put(maxNumBins, bins);
+            return data;
+        }
+    }
 
-        String nextLine = reader.readLine();
+    // Saves the features and labels (and any bins computed so far) in a binary format, which loads much faster
+    // than a CSV file. NB the logits are not saved.
+    public void saveBinary(String filepath) throws IOException {
+        requireColumns("saving");
+        writeBinary(Paths.get(filepath));
+    }
 
-        String[] fullHeaderWords = nextLine.split(",");
-        List<String> fullHeaderWordsList = Arrays.asList(fullHeaderWords);
-        int labelIndex = fullHeaderWordsList.indexOf(labelName);
+    public static Data loadBinary(String filepath) throws IOException {
+        return fromDataFile(new DataFile(Paths.get(filepath)));
+    }
 
-        if (labelIndex == -1)
-            throw new ArrayIndexOutOfBoundsException("Label field does not exist.");
+    // As load, but keeps a binary copy alongside the CSV file (in filepath + ".gbtdata"), and uses that instead
+    // whenever the CSV file still has the same size and last-modified time (and the same label is asked for).
+    // The copy is only ever written here (never while training), and is replaced in one step, so other processes
+    // loading the same file at the same time see either the old copy or the new one.
+    public static Data loadCached(String filepath, String labelName) throws IOException {
+        return loadCached(filepath, labelName, null);
+    }
+
+    // As above, but the bins for histogram training with maxNumBins are kept in the copy too:
+    // they're computed now if the copy doesn't have them yet, and then the copy is rewritten to include them.
+    public static Data loadCached(String filepath, String labelName, int maxNumBins) throws IOException {
+        return loadCached(filepath, labelName, Integer.valueOf(maxNumBins));
+    }
 
+    private static Data loadCached(String filepath, String labelName, Integer maxNumBins) throws IOException {
 
-        String[] featureIdsToNames = new String[fullHeaderWords.length - 1];
+        Path sourcePath = Paths.get(filepath);
+        Path cachePath = Paths.get(filepath + ".gbtdata");
+        long sourceSize = Files.size(sourcePath);
+        long sourceModified = Files.getLastModifiedTime(sourcePath).toMillis();
 
-        int targetCol = 0;
-        for (int col = 0; col < fullHeaderWords.length; col++) {
-            if (col != labelIndex) {
-                featureIdsToNames[targetCol] = fullHeaderWords[col];
-                targetCol++;
+        Data data = null;
+        if (Files.exists(cachePath)) {
+            try {
+                DataFile cached = new DataFile(cachePath);
+                boolean upToDate = cached.getSourceSize() == sourceSize && cached.getSourceModified() == sourceModified
+                        && cached.getLabelName().equals(labelName);
+                if (upToDate) {
+                    data = fromDataFile(cached);
+                }
+            } catch (IOException ex) {
+                // unreadable (e.g. from an older version): just replace it
             }
         }
 
-        nextLine = reader.readLine();
-
-        List<FeatureVector> featureVectors = new ArrayList<>();
+        boolean cacheMiss = (data == null);
+        if (cacheMiss) {
+            data = load(filepath, labelName);
+        }
+        data.sourceSize = sourceSize;
+        data.sourceModified = sourceModified;
+        if (maxNumBins != null && !data.binsByNumBins.containsKey(maxNumBins)) {
+            data.getBins(maxNumBins);
+            cacheMiss = true;
+        }
+        if (cacheMiss) {
+            // written alongside, then moved over the old copy
+            Path temporaryPath = Files.createTempFile(cachePath.toAbsolutePath().getParent(),
+                    cachePath.getFileName().toString(), ".tmp");
+            try {
+                data.writeBinary(temporaryPath);
+                Files.move(temporaryPath, cachePath, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporaryPath);
+            }
+        }
+        return data;
+    }
 
-        while(nextLine != null) {
-            String[] featureValueWords = nextLine.split(",");
+    private static Data fromDataFile(DataFile file) {
+        Data data = new Data(file.getColumns(), file.getLabels(), file.getFeatureIdsToNames(), file.getLabelName());
+        data.sparseColumns = file.getSparseColumns();
+        data.binsByNumBins.putAll(file.getBinsByNumBins());
+        return data;
+    }
 
-            double[] featureValues = new double[featureValueWords.length - 1];
-            // -1 to exclude the label column
+    private synchronized void writeBinary(Path path) throws IOException {
+        DataFile.write(path, labelName, sourceSize, sourceModified, columns, sparseColumns, labels, featureIdsToNames,
+                binsByNumBins);
+    }
 
-            // parsing label with error-handling
-            int labelAsInt = Integer.parseInt(featureValueWords[labelIndex]);
-            boolean label;
-            if (labelAsInt == 1)
-                label = true;
-            else if (labelAsInt == 0)
-                label = false;
-            else
-                throw new NumberFormatException("Labels must be 1 or 0.");
+    // Writes every feature, then the label and the probability (to 3 decimal places) - as toString, but streamed
+    // straight to the file (see CsvWriter)
+    public void save(String filepath) throws IOException {
+        save(filepath, allFeatureIds());
+    }
 
-            targetCol = 0;
-            for (int col = 0; col < fullHeaderWords.length; col++) {
-                if (col != labelIndex) {
-                    featureValues[targetCol] = Double.parseDouble(featureValueWords[col]);
-                    targetCol++;
-                }
+    // As save, but only writes the named feature columns (e.g. ids) before the label and probability.
+    // With no names, only the label and probability are written.
+    public void saveScores(String filepath, String... idColumnNames) throws IOException {
+        List<String> names = Arrays.asList(featureIdsToNames);
+        int[] featureIds = new int[idColumnNames.length];
+        for (int index = 0; index < idColumnNames.length; index++) {
+            featureIds[index] = names.indexOf(idColumnNames[index]);
+            if (featureIds[index] == -1) {
+                throw new IllegalArgumentException("No such column: " + idColumnNames[index]);
             }
-            FeatureVector vector = new FeatureVector(label, featureValues);
-            featureVectors.add(vector);
-            nextLine = reader.readLine();
         }
+        save(filepath, featureIds);
+    }
 
-        reader.close();
-        
-        return new Data(featureVectors, featureIdsToNames);
+    private void save(String filepath, int[] featureIds) throws IOException {
+        if (featureIds.length > 0) {
+            requireColumns("saving");
+        }
+        String[] featureNames = new String[featureIds.length];
+        for (int index = 0; index < featureIds.length; index++) {
+            featureNames[index] = featureIdsToNames[featureIds[index]];
+        }
+        try (CsvWriter writer = new CsvWriter(Files.newOutputStream(Paths.get(filepath)))) {
+            writeHeader(writer, featureNames);
+            writeRows(writer, featureIds, 0, labels.length);
+        }
     }
 
-    public void save(String filepath) throws IOException {
-        BufferedWriter writer = new BufferedWriter(new FileWriter(filepath));
-        writer.write(this.toString());
-        writer.close();
-    }
-    
-    // prints precision-recall evaluations at each of the precisions asked for
-    public void evaluate(double[] inputPrecisions) {
-    	
-    	List<FeatureVector> featureVectorsCopy = new ArrayList<>(featureVectors);
-    	
-        Collections.sort(featureVectorsCopy);
-
-        double totalCountPositive = (double) featureVectorsCopy.stream()
-                .filter(datapoint -> datapoint.getLabel()).count();
-
-        List<Double> thresholds = new ArrayList<>();
-        List<Double> precisions = new ArrayList<>();
-        List<Double> recalls = new ArrayList<>();
-
-        double currentThreshold = 1.0;
-        double currentCountAboveThreshold = 0.0;
-        double currentCountPositiveAboveThreshold = 0.0;
-
-        thresholds.add(1.0);
-        precisions.add(1.0);
-        recalls.add(0.0);
-
-        for (FeatureVector vector : featureVectorsCopy) {
-            currentThreshold = vector.getProb();
-            currentCountAboveThreshold += 1.0;
-            if (vector.getLabel()) {
-                currentCountPositiveAboveThreshold += 1.0;
-            }
+    // Evaluates the probabilities of the last train or predict against the labels: ROC-AUC, PR-AUC, log-loss,
+    // and a precision-recall point for each of the precisions asked for (see Evaluation)
+    public Evaluation evaluate(double[] inputPrecisions) {
+        return new Evaluation(logits, labels, inputPrecisions);
+    }
 
-            thresholds.add(currentThreshold);
-            precisions.add(currentCountPositiveAboveThreshold / currentCountAboveThreshold);
-            recalls.add(currentCountPositiveAboveThreshold / totalCountPositive);
+    // As above, but for logits held outside the data (e.g. from GBTModel.predictMargins), one per row
+    public Evaluation evaluate(double[] margins, double[] inputPrecisions) {
+        if (margins.length != labels.length) {
+            throw new IllegalArgumentException("Expected " + labels.length + " margins, got " + margins.length + ".");
         }
-        
-        for (double precisionTarget : inputPrecisions) {
-        	
-            int bestViableIndex = 0;
+        return new Evaluation(margins, labels, inputPrecisions);
+    }
 
-            for (int index = 0; index < precisions.size(); index++) {
-                if (precisions.get(index) >= precisionTarget) {
-                    bestViableIndex = index;
-                }
-            }
+    void markAsFitted(GBTModel model) {
+    	fittedBy = model;
+    }
 
-            double thresholdChosen = thresholds.get(bestViableIndex);
-            double recallAchieved = recalls.get(bestViableIndex);
-            double actualPrecisionAchieved = precisions.get(bestViableIndex);
-            // might be slightly off from the desired precision
-
-            StringBuilder builder = new StringBuilder();
-            builder.append("Precision: ");
-            builder.append(String.format("%.3f", actualPrecisionAchieved));
-            builder.append(", Recall: ");
-            builder.append(String.format("%.3f", recallAchieved));
-            builder.append(", Threshold: ");
-            builder.append(String.format("%.3f", thresholdChosen));
-            System.out.println(builder);
-        }
-    }
-    
-    void markAsFitted() {
-    	fitted = true;
-    }
-    
-    // erase from previous train or predict
-    void clearLogits() {
-    	if (fitted) {
-    		featureVectors.forEach(vector -> {vector.clearLogit();});
-    	}
-    	fitted = false;
+    boolean isFittedBy(GBTModel model) {
+    	return fittedBy == model;
     }
 
 }
@@ -0,0 +1,302 @@
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Reads and writes the binary (columnar) data format used by Data.saveBinary and Data.loadBinary.
+/* FILE FORMAT (all big-endian):
+ * magic (int), version (int), header length (int)
+ * header: label name, size and last-modified time of the source CSV file (-1 if none), number of rows,
+ *         feature names, each feature's number of entries (-1 if dense - see SparseColumn) and, if sparse, its
+ *         default value,
+ *         then for each set of bins: max num bins, and each feature's thresholds
+ * body: labels (a byte per row), then each column (a double per row, or if sparse, the rows of its entries as ints
+ *       followed by their values as doubles), then for each set of bins, each feature's bin ids (a byte per row,
+ *       or per entry)
+ * The body is memory-mapped when reading, and copied into the arrays in bulk.
+ * Version 1 had no numbers of entries or default values (every column being dense).
+ */
+class DataFile {
+
+    private static final int fileMagic = 0x47425444; // "GBTD"
+    private static final int fileVersion = 2;
+    private static final int maxMappedBytes = 1 << 30; // the body is mapped (and written) in pieces up to this size
+
+    private String labelName;
+    private long sourceSize;
+    private long sourceModified;
+    private double[][] columns; // columns[featureId][row] (null for a sparse column)
+    private SparseColumn[] sparseColumns; // null if every column is dense
+    private boolean[] labels;
+    private String[] featureIdsToNames;
+    private Map<Integer, FeatureBins> binsByNumBins = new TreeMap<>(); // keyed by the max num bins they were built with
+
+    String getLabelName() { return labelName; }
+    long getSourceSize() { return sourceSize; }
+    long getSourceModified() { return sourceModified; }
+    double[][] getColumns() { return columns; }
+    SparseColumn[] getSparseColumns() { return sparseColumns; }
+    boolean[] getLabels() { return labels; }
+    String[] getFeatureIdsToNames() { return featureIdsToNames; }
+    Map<Integer, FeatureBins> getBinsByNumBins() { return binsByNumBins; }
+
+    // (sparseColumns is null if every column is dense)
+    static void write(Path path, String labelName, long sourceSize, long sourceModified, double[][] columns,
+            SparseColumn[] sparseColumns, boolean[] labels, String[] featureIdsToNames,
+            Map<Integer, FeatureBins> binsByNumBins) throws IOException {
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeUTF(labelName);
+        header.writeLong(sourceSize);
+        header.writeLong(sourceModified);
+        header.writeInt(labels.length);
+        header.writeInt(featureIdsToNames.length);
+        for (String featureName : featureIdsToNames) {
+            header.writeUTF(featureName);
+        }
+        for (int featureId = 0; featureId < featureIdsToNames.length; featureId++) {
+            if (columns[featureId] != null) {
+                header.writeInt(-1);
+            } else {
+                header.writeInt(sparseColumns[featureId].getNumEntries());
+                header.writeDouble(sparseColumns[featureId].getDefaultValue());
+            }
+        }
+        header.writeInt(binsByNumBins.size());
+        for (Map.Entry<Integer, FeatureBins> entry : binsByNumBins.entrySet()) {
+            header.writeInt(entry.getKey());
+            for (int featureId = 0; featureId < featureIdsToNames.length; featureId++) {
+                double[] thresholds = entry.getValue().getThresholds(featureId);
+                header.writeInt(thresholds.length);
+                for (double threshold : thresholds) {
+                    header.writeDouble(threshold);
+                }
+            }
+        }
+        header.close();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+            buffer.putInt(fileMagic);
+            buffer.putInt(fileVersion);
+            buffer.putInt(headerBytes.size());
+            flush(channel, buffer);
+            channel.write(ByteBuffer.wrap(headerBytes.toByteArray()));
+
+            byte[] labelBytes = new byte[labels.length];
+            for (int row = 0; row < labels.length; row++) {
+                labelBytes[row] = (byte) (labels[row] ? 1 : 0);
+            }
+            writeBytes(channel, buffer, labelBytes);
+            for (int featureId = 0; featureId < columns.length; featureId++) {
+                if (columns[featureId] != null) {
+                    writeDoubles(channel, buffer, columns[featureId]);
+                } else {
+                    writeInts(channel, buffer, sparseColumns[featureId].getRows());
+                    writeDoubles(channel, buffer, sparseColumns[featureId].getValues());
+                }
+            }
+            for (FeatureBins bins : binsByNumBins.values()) {
+                for (int featureId = 0; featureId < featureIdsToNames.length; featureId++) {
+                    writeBytes(channel, buffer, bins.getBinIds(featureId));
+                }
+            }
+        }
+    }
+
+    DataFile(Path path) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            ByteBuffer prefix = ByteBuffer.allocate(3 * Integer.BYTES);
+            readFully(channel, prefix, 0);
+            if (prefix.getInt(0) != fileMagic) {
+                throw new IOException("Not a binary data file: " + path);
+            }
+            int version = prefix.getInt(Integer.BYTES);
+            if (version < 1 || version > fileVersion) {
+                throw new IOException("Unsupported data file version " + version + " (expected up to " + fileVersion + ").");
+            }
+            ByteBuffer headerBuffer = ByteBuffer.allocate(prefix.getInt(2 * Integer.BYTES));
+            readFully(channel, headerBuffer, prefix.capacity());
+            long position = prefix.capacity() + headerBuffer.capacity(); // where the body starts
+
+            DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBuffer.array()));
+            labelName = header.readUTF();
+            sourceSize = header.readLong();
+            sourceModified = header.readLong();
+            int numRows = header.readInt();
+            featureIdsToNames = new String[header.readInt()];
+            for (int featureId = 0; featureId < featureIdsToNames.length; featureId++) {
+                featureIdsToNames[featureId] = header.readUTF();
+            }
+            int[] numEntries = new int[featureIdsToNames.length]; // -1 for a dense column
+            Arrays.fill(numEntries, -1);
+            double[] defaultValues = new double[featureIdsToNames.length];
+            Arrays.fill(defaultValues, Double.NaN);
+            if (version >= 2) {
+                for (int featureId = 0; featureId < featureIdsToNames.length; featureId++) {
+                    numEntries[featureId] = header.readInt();
+                    if (numEntries[featureId] >= 0) {
+                        defaultValues[featureId] = header.readDouble();
+                    }
+                }
+            }
+            int numBinSets = header.readInt();
+            int[] binSetNumBins = new int[numBinSets];
+            double[][][] binSetThresholds = new double[numBinSets][featureIdsToNames.length][];
+            for (int binSetId = 0; binSetId < numBinSets; binSetId++) {
+                binSetNumBins[binSetId] = header.readInt();
+                for (int featureId = 0; featureId < featureIdsToNames.length; featureId++) {
+                    double[] thresholds = new double[header.readInt()];
+                    for (int binId = 0; binId < thresholds.length; binId++) {
+                        thresholds[binId] = header.readDouble();
+                    }
+                    binSetThresholds[binSetId][featureId] = thresholds;
+                }
+            }
+
+            long expectedSize = position + numRows;
+            for (int featureId = 0; featureId < featureIdsToNames.length; featureId++) {
+                long featureSize = (numEntries[featureId] < 0) ? (long) numRows * (Double.BYTES + numBinSets)
+                        : (long) numEntries[featureId] * (Integer.BYTES + Double.BYTES + numBinSets);
+                expectedSize += featureSize;
+            }
+            if (channel.size() != expectedSize) {
+                throw new IOException("Data file should be " + expectedSize + " bytes, but is " + channel.size() + ".");
+            }
+
+            byte[] labelBytes = new byte[numRows];
+            position = readBytes(channel, position, labelBytes);
+            labels = new boolean[numRows];
+            for (int row = 0; row < numRows; row++) {
+                labels[row] = (labelBytes[row] != 0);
+            }
+            columns = new double[featureIdsToNames.length][];
+            int[][] entryRows = new int[featureIdsToNames.length][]; // null for a dense column
+            for (int featureId = 0; featureId < featureIdsToNames.length; featureId++) {
+                if (numEntries[featureId] < 0) {
+                    columns[featureId] = new double[numRows];
+                    position = readDoubles(channel, position, columns[featureId]);
+                } else {
+                    if (sparseColumns == null) {
+                        sparseColumns = new SparseColumn[featureIdsToNames.length];
+                    }
+                    entryRows[featureId] = new int[numEntries[featureId]];
+                    double[] values = new double[numEntries[featureId]];
+                    position = readInts(channel, position, entryRows[featureId]);
+                    position = readDoubles(channel, position, values);
+                    sparseColumns[featureId] = new SparseColumn(entryRows[featureId], values, defaultValues[featureId]);
+                }
+            }
+            for (int binSetId = 0; binSetId < numBinSets; binSetId++) {
+                byte[][] binIds = new byte[featureIdsToNames.length][];
+                for (int featureId = 0; featureId < featureIdsToNames.length; featureId++) {
+                    binIds[featureId] = new byte[(numEntries[featureId] < 0) ? numRows : numEntries[featureId]];
+                    position = readBytes(channel, position, binIds[featureId]);
+                }
+                binsByNumBins.put(binSetNumBins[binSetId],
+                        new FeatureBins(binSetThresholds[binSetId], binIds, entryRows, defaultValues));
+            }
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void writeBytes(FileChannel channel, ByteBuffer buffer, byte[] values) throws IOException {
+        for (int offset = 0; offset < values.length; ) {
+            int length = Math.min(buffer.capacity(), values.length - offset);
+            buffer.put(values, offset, length);
+            flush(channel, buffer);
+            offset += length;
+        }
+    }
+
+    private static void writeDoubles(FileChannel channel, ByteBuffer buffer, double[] values) throws IOException {
+        int doublesPerBuffer = buffer.capacity() / Double.BYTES;
+        for (int offset = 0; offset < values.length; ) {
+            int length = Math.min(doublesPerBuffer, values.length - offset);
+            buffer.asDoubleBuffer().put(values, offset, length);
+            buffer.position(length * Double.BYTES);
+            flush(channel, buffer);
+            offset += length;
+        }
+    }
+
+    private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values) throws IOException {
+        int intsPerBuffer = buffer.capacity() / Integer.BYTES;
+        for (int offset = 0; offset < values.length; ) {
+            int length = Math.min(intsPerBuffer, values.length - offset);
+            buffer.asIntBuffer().put(values, offset, length);
+            buffer.position(length * Integer.BYTES);
+            flush(channel, buffer);
+            offset += length;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of data file.");
+            }
+        }
+    }
+
+    // these return the position just after what they've read
+
+    private static long readBytes(FileChannel channel, long position, byte[] values) throws IOException {
+        for (int offset = 0; offset < values.length; ) {
+            int length = Math.min(maxMappedBytes, values.length - offset);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            mapped.get(values, offset, length);
+            position += length;
+            offset += length;
+        }
+        return position;
+    }
+
+    private static long readInts(FileChannel channel, long position, int[] values) throws IOException {
+        int intsPerMapping = maxMappedBytes / Integer.BYTES;
+        for (int offset = 0; offset < values.length; ) {
+            int length = Math.min(intsPerMapping, values.length - offset);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) length * Integer.BYTES);
+            mapped.asIntBuffer().get(values, offset, length);
+            position += (long) length * Integer.BYTES;
+            offset += length;
+        }
+        return position;
+    }
+
+    private static long readDoubles(FileChannel channel, long position, double[] values) throws IOException {
+        int doublesPerMapping = maxMappedBytes / Double.BYTES;
+        for (int offset = 0; offset < values.length; ) {
+            int length = Math.min(doublesPerMapping, values.length - offset);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) length * Double.BYTES);
+            mapped.asDoubleBuffer().get(values, offset, length);
+            position += (long) length * Double.BYTES;
+            offset += length;
+        }
+        return position;
+    }
+
+}
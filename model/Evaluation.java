@@ -0,0 +1,230 @@
+package model;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// The result of Data.evaluate: ROC-AUC, PR-AUC (as average precision), log-loss, and the
+// precision-recall point reached at each of the precisions asked for.
+// Everything is found in a single pass over the rows in descending order of logit (found by a radix sort,
+// so in linear time), however many precisions are asked for.
+public class Evaluation {
+
+    private static final int radixBits = 16;
+    private static final int radixMask = (1 << radixBits) - 1;
+
+    private double rocAuc;
+    private double prAuc;
+    private double logLoss;
+    private double[] precisionTargets;
+    // for each target: the point furthest down the ranking whose precision is at least the target
+    private double[] precisions;
+    private double[] recalls;
+    private double[] thresholds; // the probability of the row at that point
+
+    public double getRocAuc() { return rocAuc; }
+    public double getPrAuc() { return prAuc; }
+    public double getLogLoss() { return logLoss; }
+    public double[] getPrecisionTargets() { return precisionTargets.clone(); }
+    public double[] getPrecisions() { return precisions.clone(); }
+    public double[] getRecalls() { return recalls.clone(); }
+    public double[] getThresholds() { return thresholds.clone(); }
+
+    Evaluation(double[] logits, boolean[] labels, double[] precisionTargets) {
+
+        int numRows = labels.length;
+        this.precisionTargets = precisionTargets.clone();
+        int[] sortedRows = sortDescending(logits);
+        long totalPositive = IntStream.range(0, numRows).filter(row -> labels[row]).count();
+        long totalNegative = numRows - totalPositive;
+
+        // The precision-recall points are taken row by row (so ties are broken by row order); every row whose
+        // precision reaches k of the targets (sorted ascending) is remembered as the latest to do so.
+        // The answer for the j-th target is then the latest of those reaching more than j targets.
+        double[] sortedTargets = precisionTargets.clone();
+        Arrays.sort(sortedTargets);
+        int numTargets = sortedTargets.length;
+        int[] latestReaching = new int[numTargets + 1]; // position in the ranking (0 is before the first row)
+        double[] latestPrecision = new double[numTargets + 1];
+        double[] latestRecall = new double[numTargets + 1];
+        double[] latestThreshold = new double[numTargets + 1];
+        Arrays.fill(latestReaching, -1);
+        // the point before any rows, with precision 1 (reaching every target up to 1)
+        remember(latestReaching, latestPrecision, latestRecall, latestThreshold,
+                countAtMost(sortedTargets, 1.0), 0, 1.0, 0.0, 1.0);
+
+        double sumPrecisionTimesRecallStep = 0.0; // average precision
+        double sumNegativesBelow = 0.0; // ROC-AUC, as the count of correctly ordered (positive, negative) pairs
+        double sumLogLoss = 0.0;
+        long numAbove = 0;
+        long positivesAbove = 0;
+        int position = 0;
+        while (position < numRows) {
+            // a group of rows with the same logit: only the whole group can be above or below a threshold
+            double groupLogit = logits[sortedRows[position]];
+            double groupProb = getProb(groupLogit);
+            long groupPositives = 0;
+            long groupNegatives = 0;
+            for (; position < numRows && Double.compare(logits[sortedRows[position]], groupLogit) == 0; position++) {
+                numAbove++;
+                if (labels[sortedRows[position]]) {
+                    positivesAbove++;
+                    groupPositives++;
+                } else {
+                    groupNegatives++;
+                }
+                double precision = (double) positivesAbove / numAbove;
+                int numReached = countAtMost(sortedTargets, precision);
+                remember(latestReaching, latestPrecision, latestRecall, latestThreshold, numReached, position + 1,
+                        precision, positivesAbove / (double) totalPositive, groupProb);
+            }
+            sumLogLoss += groupPositives * logLoss(groupLogit, true) + groupNegatives * logLoss(groupLogit, false);
+            // pairs within the group count as half right
+            sumNegativesBelow += groupNegatives * (positivesAbove - groupPositives + groupPositives / 2.0);
+            if (groupPositives > 0) {
+                sumPrecisionTimesRecallStep += ((double) positivesAbove / numAbove) * groupPositives;
+            }
+        }
+
+        rocAuc = sumNegativesBelow / ((double) totalPositive * totalNegative);
+        prAuc = sumPrecisionTimesRecallStep / totalPositive;
+        logLoss = sumLogLoss / numRows;
+
+        // latestReaching[k] -> the latest point reaching at least k targets
+        for (int numReached = numTargets - 1; numReached >= 0; numReached--) {
+            if (latestReaching[numReached + 1] > latestReaching[numReached]) {
+                latestReaching[numReached] = latestReaching[numReached + 1];
+                latestPrecision[numReached] = latestPrecision[numReached + 1];
+                latestRecall[numReached] = latestRecall[numReached + 1];
+                latestThreshold[numReached] = latestThreshold[numReached + 1];
+            }
+        }
+        precisions = new double[numTargets];
+        recalls = new double[numTargets];
+        thresholds = new double[numTargets];
+        for (int targetId = 0; targetId < numTargets; targetId++) {
+            // the j-th smallest target is reached by points reaching more than j targets
+            // (if no point reaches it, the first point is used, as it always has been)
+            int numReached = countBelow(sortedTargets, precisionTargets[targetId]) + 1;
+            if (latestReaching[numReached] >= 0) {
+                precisions[targetId] = latestPrecision[numReached];
+                recalls[targetId] = latestRecall[numReached];
+                thresholds[targetId] = latestThreshold[numReached];
+            } else {
+                precisions[targetId] = 1.0;
+                recalls[targetId] = 0.0;
+                thresholds[targetId] = 1.0;
+            }
+        }
+    }
+
+    private static void remember(int[] latestReaching, double[] latestPrecision, double[] latestRecall,
+            double[] latestThreshold, int numReached, int position, double precision, double recall, double threshold) {
+        latestReaching[numReached] = position;
+        latestPrecision[numReached] = precision;
+        latestRecall[numReached] = recall;
+        latestThreshold[numReached] = threshold;
+    }
+
+    // the number of sorted values <= value
+    private static int countAtMost(double[] sortedValues, double value) {
+        int low = 0;
+        int high = sortedValues.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedValues[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // the number of sorted values < value
+    private static int countBelow(double[] sortedValues, double value) {
+        int low = 0;
+        int high = sortedValues.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedValues[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // The rows in descending order of logit (as Double.compare), with ties in row order.
+    // This is a (stable) LSD radix sort, 16 bits at a time, of each logit's bits, flipped so that their unsigned
+    // order is the descending order of the logits. Digits which are the same for every row are skipped.
+    private static int[] sortDescending(double[] logits) {
+        int numRows = logits.length;
+        long[] keys = new long[numRows];
+        int[] rows = new int[numRows];
+        for (int row = 0; row < numRows; row++) {
+            long bits = Double.doubleToLongBits(logits[row]);
+            long ascending = bits ^ ((bits >> 63) & Long.MAX_VALUE); // as signed longs
+            keys[row] = ~(ascending ^ Long.MIN_VALUE);
+            rows[row] = row;
+        }
+        long[] nextKeys = new long[numRows];
+        int[] nextRows = new int[numRows];
+        int[] counts = new int[1 << radixBits];
+        for (int shift = 0; shift < Long.SIZE; shift += radixBits) {
+            Arrays.fill(counts, 0);
+            for (long key : keys) {
+                counts[(int) (key >>> shift) & radixMask]++;
+            }
+            if (numRows == 0 || counts[(int) (keys[0] >>> shift) & radixMask] == numRows) {
+                continue;
+            }
+            int position = 0;
+            for (int digit = 0; digit < counts.length; digit++) {
+                int count = counts[digit];
+                counts[digit] = position;
+                position += count;
+            }
+            for (int index = 0; index < numRows; index++) {
+                int target = counts[(int) (keys[index] >>> shift) & radixMask]++;
+                nextKeys[target] = keys[index];
+                nextRows[target] = rows[index];
+            }
+            long[] swapKeys = keys;
+            keys = nextKeys;
+            nextKeys = swapKeys;
+            int[] swapRows = rows;
+            rows = nextRows;
+            nextRows = swapRows;
+        }
+        return rows;
+    }
+
+    // -log of the probability given to the right label, computed so as not to overflow
+    static double logLoss(double logit, boolean label) {
+        double signedLogit = label ? logit : -logit;
+        return Math.log1p(Math.exp(-Math.abs(signedLogit))) + Math.max(-signedLogit, 0.0);
+    }
+
+    private static double getProb(double logit) {
+        double expLogit = Math.exp(logit);
+        return expLogit / (1.0 + expLogit);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("ROC-AUC: %.4f, PR-AUC: %.4f, Log-loss: %.4f", rocAuc, prAuc, logLoss));
+        for (int targetId = 0; targetId < precisionTargets.length; targetId++) {
+            builder.append("\n");
+            builder.append("Precision: ");
+            builder.append(String.format("%.3f", precisions[targetId]));
+            builder.append(", Recall: ");
+            builder.append(String.format("%.3f", recalls[targetId]));
+            builder.append(", Threshold: ");
+            builder.append(String.format("%.3f", thresholds[targetId]));
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,259 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// helper class - for histogram-based split finding
+// Each feature is bucketed into at most maxNumBins quantile bins, once at the start of training.
+// Missing values (NaN) go into a bin of their own, after the others (see getMissingBinId).
+class FeatureBins {
+
+    // visits the entries of a sparse feature (see forEachEntry)
+    interface EntryVisitor {
+        void visit(int row, int binId);
+    }
+
+    // thresholds[featureId][binId] is the (inclusive) upper edge of that bin;
+    // the last bin of each feature has no upper edge, so there is one fewer threshold than bins
+    private double[][] thresholds;
+
+    // binIds[featureId][row], stored as unsigned bytes (bin ids run from 0 to 255, counting the missing bin)
+    private byte[][] binIds;
+    // for sparse features (see SparseColumn), binIds[featureId] has one per entry instead, entry i being
+    // row entryRows[featureId][i] (every other row having the feature's default value); null for the rest
+    private int[][] entryRows;
+    private int[] defaultBinIds; // for sparse features, the bin of the rows with no entry (maybe the missing bin)
+    // or else the same as binIds, in a memory-mapped file (see BinnedCsvReader)
+    private ByteBuffer[] mappedBinIds = null;
+
+    FeatureBins(Data data, int maxNumBins) {
+
+        int numFeatures = data.getNumFeatures();
+        thresholds = new double[numFeatures][];
+        binIds = new byte[numFeatures][];
+        entryRows = new int[numFeatures][];
+        defaultBinIds = new int[numFeatures];
+
+        IntStream.range(0, numFeatures).parallel().forEach(featureId -> {
+            double[] values = data.getEntryValues(featureId);
+
+            double[] sortedValues = values.clone();
+            Arrays.sort(sortedValues); // NaNs go to the end
+            int numPresent = sortedValues.length;
+            while (numPresent > 0 && Double.isNaN(sortedValues[numPresent - 1])) {
+                numPresent--;
+            }
+            // the rows with no entry count towards the quantiles as so many copies of the default value
+            double defaultValue = data.getDefaultValue(featureId);
+            int numDefaults = Double.isNaN(defaultValue) ? 0 : data.getNumRows() - values.length;
+            thresholds[featureId] = computeThresholds(Arrays.copyOf(sortedValues, numPresent), defaultValue,
+                    numDefaults, maxNumBins);
+            defaultBinIds[featureId] = findBinId(featureId, defaultValue);
+
+            byte[] featureBinIds = new byte[values.length];
+            for (int entryId = 0; entryId < values.length; entryId++) {
+                featureBinIds[entryId] = (byte) findBinId(featureId, values[entryId]);
+            }
+            binIds[featureId] = featureBinIds;
+            entryRows[featureId] = data.getEntryRows(featureId);
+        });
+    }
+
+    // for bins read back from a binary data file (see DataFile)
+    FeatureBins(double[][] thresholds, byte[][] binIds, int[][] entryRows, double[] defaultValues) {
+        this.thresholds = thresholds;
+        this.binIds = binIds;
+        this.entryRows = entryRows;
+        this.defaultBinIds = new int[thresholds.length];
+        for (int featureId = 0; featureId < thresholds.length; featureId++) {
+            defaultBinIds[featureId] = findBinId(featureId, defaultValues[featureId]);
+        }
+    }
+
+    // for bins which are kept off the heap: mappedBinIds[featureId] holds a byte per row
+    FeatureBins(double[][] thresholds, ByteBuffer[] mappedBinIds) {
+        this.thresholds = thresholds;
+        this.mappedBinIds = mappedBinIds;
+    }
+
+    double[] getThresholds(int featureId) {
+        return thresholds[featureId];
+    }
+
+    // only for bins held on the heap (one per entry for a sparse feature)
+    byte[] getBinIds(int featureId) {
+        return binIds[featureId];
+    }
+
+    boolean isSparse(int featureId) {
+        return entryRows != null && entryRows[featureId] != null;
+    }
+
+    int getNumFeatures() {
+        return thresholds.length;
+    }
+
+    // not counting the missing bin
+    int getNumBins(int featureId) {
+        return thresholds[featureId].length + 1;
+    }
+
+    // the bin for missing values, just after the last of the others (so at most 255)
+    int getMissingBinId(int featureId) {
+        return thresholds[featureId].length + 1;
+    }
+
+    // only for a sparse feature
+    int getDefaultBinId(int featureId) {
+        return defaultBinIds[featureId];
+    }
+
+    // splitting after binId sends every value <= this threshold to the left
+    double getThreshold(int featureId, int binId) {
+        return thresholds[featureId][binId];
+    }
+
+    // NB for a sparse feature, this is a binary search (see forEachEntry for visiting a node's rows)
+    int getBinId(int featureId, int row) {
+        if (mappedBinIds != null) {
+            return mappedBinIds[featureId].get(row) & 0xFF;
+        }
+        if (isSparse(featureId)) {
+            int entryId = Arrays.binarySearch(entryRows[featureId], row);
+            return (entryId >= 0) ? binIds[featureId][entryId] & 0xFF : defaultBinIds[featureId];
+        }
+        return binIds[featureId][row] & 0xFF;
+    }
+
+    // For a sparse feature: visits those rows of rowIds[begin, end) (which must be in ascending order) that have an
+    // entry, in row order. The shorter of the two lists is walked, galloping through the longer one, so that a node
+    // with few values for the feature only costs about as much as it has values (rather than rows).
+    void forEachEntry(int featureId, int[] rowIds, int begin, int end, EntryVisitor visitor) {
+        int[] rows = entryRows[featureId];
+        byte[] featureBinIds = binIds[featureId];
+        int entryId = gallop(rows, 0, rows.length, (begin < end) ? rowIds[begin] : Integer.MAX_VALUE);
+        int position = begin;
+        while (entryId < rows.length && position < end) {
+            int entryRow = rows[entryId];
+            int nodeRow = rowIds[position];
+            if (entryRow == nodeRow) {
+                visitor.visit(nodeRow, featureBinIds[entryId] & 0xFF);
+                entryId++;
+                position++;
+            } else if (entryRow < nodeRow) {
+                entryId = gallop(rows, entryId, rows.length, nodeRow);
+            } else {
+                position = gallop(rowIds, position, end, entryRow);
+            }
+        }
+    }
+
+    // the first position in the (ascending) values[from, to) holding at least key (or to):
+    // steps of 1, 2, 4, ... from the start, then a binary search within the last step
+    private static int gallop(int[] values, int from, int to, int key) {
+        int low = from;
+        int step = 1;
+        while (low + step < to && values[low + step - 1] < key) {
+            low += step;
+            step *= 2;
+        }
+        int high = Math.min(low + step, to);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // first bin whose upper edge is >= value (binary search), or the missing bin for NaN
+    int findBinId(int featureId, double value) {
+        if (Double.isNaN(value)) {
+            return getMissingBinId(featureId);
+        }
+        double[] edges = thresholds[featureId];
+        int low = 0;
+        int high = edges.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (value <= edges[middle]) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    // Places the bin edges halfway between consecutive distinct values, so that every edge is
+    // a threshold which the exact method could also have chosen.
+    // If there are few enough distinct values, every gap gets an edge (and histogram splits are exact);
+    // otherwise the edges are spaced so that each bin holds roughly the same number of samples.
+    static double[] computeThresholds(double[] sortedValues, int maxNumBins) {
+        return computeThresholds(sortedValues, Double.NaN, 0, maxNumBins);
+    }
+
+    // As above, but as if sortedValues also held numDefaults copies of defaultValue (for a sparse feature, without
+    // ever holding them): the values are visited as items, the copies making up a single item among them.
+    static double[] computeThresholds(double[] sortedValues, double defaultValue, int numDefaults, int maxNumBins) {
+
+        int defaultItem = (numDefaults > 0) ? countBelow(sortedValues, defaultValue) : -1; // -1 if none
+        int numItems = sortedValues.length + ((numDefaults > 0) ? 1 : 0);
+        long totalSamples = (long) sortedValues.length + numDefaults;
+
+        int numDistinct = (numItems == 0) ? 0 : 1;
+        for (int item = 1; item < numItems; item++) {
+            if (itemValue(sortedValues, defaultItem, defaultValue, item)
+                    != itemValue(sortedValues, defaultItem, defaultValue, item - 1)) {
+                numDistinct++;
+            }
+        }
+        boolean cutEveryGap = (numDistinct <= maxNumBins);
+
+        double[] edges = new double[maxNumBins - 1];
+        int numEdges = 0;
+
+        long samplesLeft = (defaultItem == 0) ? numDefaults : 1; // the number that would lie to the left of an edge
+        for (int item = 1; item < numItems && numEdges < edges.length; item++) {
+            double valueLeft = itemValue(sortedValues, defaultItem, defaultValue, item - 1);
+            double valueRight = itemValue(sortedValues, defaultItem, defaultValue, item);
+            if (valueRight != valueLeft) {
+                long targetSamplesLeft = totalSamples * (numEdges + 1) / maxNumBins;
+                if (cutEveryGap || samplesLeft >= targetSamplesLeft) {
+                    edges[numEdges] = (valueLeft + valueRight) / 2.0;
+                    numEdges++;
+                }
+            }
+            samplesLeft += (item == defaultItem) ? numDefaults : 1;
+        }
+
+        return Arrays.copyOf(edges, numEdges);
+    }
+
+    private static double itemValue(double[] sortedValues, int defaultItem, double defaultValue, int item) {
+        if (defaultItem < 0 || item < defaultItem) {
+            return sortedValues[item];
+        }
+        return (item == defaultItem) ? defaultValue : sortedValues[item - 1];
+    }
+
+    // the number of (ascending) values below value
+    private static int countBelow(double[] sortedValues, double value) {
+        int low = 0;
+        int high = sortedValues.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedValues[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+}
@@ -15,6 +15,18 @@ class FeatureImportances {
         }
     }
 
+    // for a model loaded from file (the gains are then filled in with increment)
+    FeatureImportances(String[] featureNames) {
+        importances = new ArrayList<>(featureNames.length);
+        for (String featureName : featureNames) {
+            importances.add(new SingleImportance(featureName));
+        }
+    }
+
+    double getMetricGain(int featureId) {
+        return importances.get(featureId).metricGain;
+    }
+
     void increment(int featureId, double extraGain) {
         importances.get(featureId).increment(extraGain);
     }
@@ -25,6 +25,15 @@ class FeatureSelector {
         this.numFeaturesAvailable = numFeaturesAvailable;
     }
 
+    // the random generator's state is kept in checkpoints (see Checkpointer)
+    Random getGenerator() {
+        return generator;
+    }
+
+    void setGenerator(Random generator) {
+        this.generator = generator;
+    }
+
     List<Integer> sampleFeatures() {
 
         // This calls the random generator more times than strictly necessary,
@@ -0,0 +1,64 @@
+package model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// The trained trees compiled into flat arrays of nodes, for scoring without walking the node objects.
+// Each tree occupies a contiguous run of slots starting at its root; the two children of a branch are
+// always in adjacent slots, so a branch only needs to record where its left child is.
+// Either held on the heap (ArrayForest, straight after training) or read from a model file (MappedForest).
+abstract class Forest {
+
+    static final int bytesPerNode = 16; // in a model file: featureId (int), leftChildId (int), value (double)
+    // set in a branch's leftChildId (in a model file) when the rows missing its feature go left
+    static final int missingGoesLeftFlag = Integer.MIN_VALUE;
+
+    abstract int getNumTrees();
+
+    abstract int getNumNodes();
+
+    abstract int getRootId(int treeId);
+
+    abstract int getFeatureId(int nodeId); // -1 marks a leaf
+
+    abstract int getLeftChildId(int nodeId); // the right child is always the next slot
+
+    abstract double getValue(int nodeId); // the threshold of a branch, or the deltaLogit of a leaf
+
+    abstract boolean getMissingGoesLeft(int nodeId); // false for a leaf
+
+    // the sum of the deltaLogits of the leaves which these features land in, one tree after another
+    // (adding them in the same order as the tree walk, so the result is identical)
+    // NB reads nothing but the nodes, so may be called from any number of threads at once
+    abstract double getMargin(double[] features);
+
+    // Adds the margins of the rows [beginRow, endRow) to margins (indexed from beginRow), tree by tree:
+    // each tree is walked for the whole block before moving onto the next, so it stays in cache.
+    // Each row still adds up its leaves in tree order, so this gives the same result as the tree walk.
+    void addMargins(Data data, int beginRow, int endRow, double[] margins) {
+        addMargins(data, beginRow, endRow, 0, getNumTrees(), margins);
+    }
+
+    // as above, but only adding the trees [beginTree, endTree) (for staged predictions - see GBTModel.predictStaged)
+    abstract void addMargins(Data data, int beginRow, int endRow, int beginTree, int endTree, double[] margins);
+
+    // the number of trees and nodes, and the root ids (small enough to be read in along with the model header)
+    void writeTrees(DataOutputStream out) throws IOException {
+        out.writeInt(getNumTrees());
+        out.writeInt(getNumNodes());
+        for (int treeId = 0; treeId < getNumTrees(); treeId++) {
+            out.writeInt(getRootId(treeId));
+        }
+    }
+
+    // the nodes themselves, bytesPerNode each, in the layout read by MappedForest
+    void writeNodes(DataOutputStream out) throws IOException {
+        for (int nodeId = 0; nodeId < getNumNodes(); nodeId++) {
+            out.writeInt(getFeatureId(nodeId));
+            out.writeInt(getMissingGoesLeft(nodeId) ? getLeftChildId(nodeId) | missingGoesLeftFlag
+                    : getLeftChildId(nodeId));
+            out.writeDouble(getValue(nodeId));
+        }
+    }
+
+}
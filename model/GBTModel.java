@@ -1,15 +1,49 @@
 package model;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 
 public class GBTModel {
 
     private List<AbstractNode> trees; // Each AbstractNode in this list is the **root** of a tree
+    // (trees is null if the model was loaded from file: then there's only the forest)
     private FeatureImportances importances;
+    private Forest forest; // the same trees as flat arrays, for faster scoring
+    private Config config; // the config it was trained with
+    private String[] featureNames; // in the order that the features must be given for scoring
+    private byte[] checkpointState = null; // only in a model loaded from a checkpoint: see resume
+    private static final int predictBlockSize = 256; // rows scored together, tree by tree
+
+    private static final int fileMagic = 0x4742544D; // "GBTM"
+    private static final int fileVersion = 4;
+    // version 1 had no patience in the config, version 2 no sampling, version 3 no default directions for NaNs
 
     public String toString() {
+        if (trees == null) {
+        	return "Model of " + forest.getNumTrees() + " trees, loaded from file\n";
+        }
         StringBuilder builder = new StringBuilder();
         for (AbstractNode tree : trees) {
             builder.append(tree.toString());
@@ -23,48 +57,540 @@ public class GBTModel {
     }
 
     // don't use this constructor; instead, use the train method as a factory
-    private GBTModel(List<AbstractNode> trees, FeatureImportances importances) {
+    private GBTModel(List<AbstractNode> trees, Forest forest, FeatureImportances importances,
+    		Config config, String[] featureNames) {
         this.trees = trees;
+        this.forest = forest;
         this.importances = importances;
+        this.config = config;
+        this.featureNames = featureNames;
     }
 
     // a factory - returns a GBTModel object whose trees are fitted to data according to config
     public static GBTModel train(Config config, Data data) {
+    	return train(config, data, null);
+    }
+    
+    // As above, but also scores validation as the trees are built: each new tree is just added to its logits,
+    // and the log-loss updated. With config.getPatience() set, training stops once that many trees in a row
+    // have failed to improve the log-loss, and those trees are dropped (the validation logits being restored to what
+    // they were with the best number of trees, and the dropped trees' increments taken off data's).
+    // Afterwards validation holds the model's logits, just as if predict had been called on it.
+    public static GBTModel train(Config config, Data data, Data validation) {
+    	return train(config, data, validation, null, config.getNumTrees(), null);
+    }
+    
+    // Warm start: returns a new model of this model's trees followed by extraTrees more, grown on data according to
+    // config (whose number of trees is ignored). Boosting carries on from this model's logits, so these are taken
+    // from data if this model was the last to train or predict on it, or else found with one pass of predict.
+    // This model is left as it was (and may have been loaded from file).
+    public GBTModel continueTraining(Config config, Data data, int extraTrees) {
+    	return continueTraining(config, data, null, extraTrees);
+    }
+    
+    // as above, but with validation (and early stopping, if config.getPatience() is set) just as in train
+    // (only the extra trees may be dropped)
+    public GBTModel continueTraining(Config config, Data data, Data validation, int extraTrees) {
+    	if (extraTrees < 1) {
+    		throw new IllegalArgumentException("Extra trees must be at least 1, got " + extraTrees + ".");
+    	}
+    	requireFeatures(data);
+    	return train(config, data, validation, this, extraTrees, null);
+    }
+    
+    // Carries on a training run from its last checkpoint (see Config.setCheckpoint), up to config.getNumTrees() trees
+    // in all. The checkpoint's trees are read in, data's logits found from them with one pass of predict, and
+    // the random generators put back as they were, so the result is just what the run would have given had it not
+    // been interrupted (config being the run's own - so further checkpoints go on being written to the same file).
+    public static GBTModel resume(Path checkpoint, Config config, Data data) throws IOException {
+    	return resume(checkpoint, config, data, null);
+    }
+    
+    // as above, but with validation (and early stopping, if config.getPatience() is set) just as in train
+    // (NB early stopping starts afresh from the checkpoint, and only the trees grown since may be dropped)
+    public static GBTModel resume(Path checkpoint, Config config, Data data, Data validation) throws IOException {
+    	GBTModel saved = load(checkpoint);
+    	if (saved.checkpointState == null) {
+    		throw new IOException("Not a checkpoint: " + checkpoint);
+    	}
+    	// the trees are copied onto the heap, as the checkpoint file is about to be replaced by the next one
+    	GBTModel base = new GBTModel(null, new ArrayForest(saved.forest, new ArrayList<>()), saved.importances,
+    			saved.config, saved.featureNames);
+    	base.requireFeatures(data);
+    	int remainingTrees = config.getNumTrees() - base.getNumTrees();
+    	if (remainingTrees < 1) {
+    		// the run had already finished: data and validation are just scored, leaving them as train would
+    		base.predict(data);
+    		if (validation != null) {
+    			base.predict(validation);
+    		}
+    		return base;
+    	}
+    	return train(config, data, validation, base, remainingTrees, saved.checkpointState);
+    }
+    
+    // Grows numTrees trees, boosting from the logits of base (or from zero, with no base), and leaves the logits
+    // in data and validation. randomState is that of a checkpoint being resumed, or else null.
+    private static GBTModel train(Config config, Data data, Data validation, GBTModel base, int numTrees,
+    		byte[] randomState) {
     	
-    	data.clearLogits();
+    	ForkJoinPool exec = new ForkJoinPool(config.getNumThreads()); // work-stealing, so idle threads help out
+    	TrainingRun run;
+    	try {
+    		run = boost(config, data, validation, base, numTrees, randomState, exec, null);
+    	} finally {
+    		exec.shutdown();
+    	}
+    	
+    	data.setLogits(run.getLogits());
+    	data.markAsFitted(run.getModel());
+    	if (validation != null) {
+    		validation.setLogits(run.getValidationLogits());
+    		validation.markAsFitted(run.getModel());
+    	}
+    	return run.getModel();
+    }
+    
+    // The boosting itself, with all of the work shared out over exec. This changes nothing in data or validation
+    // (the run's logits are its own - see TrainingRun), so any number of runs may share them (see ConfigSearch).
+    // If there's a monitor, it's told the validation log-loss after each tree, and may stop the run there.
+    static TrainingRun boost(Config config, Data data, Data validation, GBTModel base, int numTrees,
+    		byte[] randomState, ForkJoinPool exec, TrainingRun.Monitor monitor) {
+    	
+    	double[] validationLogits = null;
+    	if (validation != null) {
+    		if (validation == data) {
+    			throw new IllegalArgumentException("The validation data must be different from the training data.");
+    		}
+    		if (validation.getNumFeatures() != data.getNumFeatures()) {
+    			throw new IllegalArgumentException("Expected " + data.getNumFeatures() + " features, got " + validation.getNumFeatures() + ".");
+    		}
+    		validation.requireColumns("validation");
+    		validationLogits = startingLogits(base, validation, exec);
+    	}
     	
     	FeatureSelector featureSelector = new FeatureSelector(config, data.getNumFeatures());
-    	List<AbstractNode> trainedTrees = new ArrayList<>(config.getNumTrees());
+    	List<AbstractNode> trainedTrees = new ArrayList<>(numTrees);
     	
-    	FeatureImportances importances = new FeatureImportances(data);
+        String[] featureNames = new String[data.getNumFeatures()];
+        for (int featureId = 0; featureId < featureNames.length; featureId++) {
+        	featureNames[featureId] = data.getFeatureName(featureId);
+        }
     	
-    	ExecutorService exec = Executors.newFixedThreadPool(config.getNumThreads());
+    	if (config.getNumBins() == null && !data.hasColumns()) {
+    		throw new IllegalArgumentException("Data loaded with loadBinned can only be used with histogram splits.");
+    	}
+    	// null unless using histogram splits
+    	FeatureBins bins = (config.getNumBins() != null) ? data.getBins(config.getNumBins()) : null;
+    	HistogramCache cache = new HistogramCache(config);
     	
-    	for (int treeId = 0; treeId < config.getNumTrees(); treeId++) {
-    		AbstractNode rootNode = new LeafNode(1, data.getFeatureVectors());
-    		rootNode = rootNode.split(config, featureSelector, exec);
-    		trainedTrees.add(rootNode);
-    		rootNode.updateFeatureImportances(importances);
+    	// kept up to date as each leaf is finalised
+    	Gradients gradients = new Gradients(data, startingLogits(base, data, exec), exec);
+    	RowPartition partition = new RowPartition(data, bins == null); // presorted for exact splits
+    	RowSampler rowSampler = new RowSampler(config, data.getNumRows()); // does nothing unless sampling
+    	if (randomState != null) {
+    		Checkpointer.restoreRandomState(randomState, featureSelector, rowSampler);
     	}
+    	Checkpointer checkpointer = new Checkpointer(config); // does nothing unless checkpointing
+    	int numBaseTrees = (base != null) ? base.getNumTrees() : 0;
+    	TrainingContext context = new TrainingContext(config, data, gradients, partition,
+    			featureSelector, bins, cache, exec);
     	
-    	exec.shutdown();
-        
-        data.markAsFitted();
+    	// for early stopping
+    	double bestValidationLoss = Double.POSITIVE_INFINITY;
+    	int bestNumTrees = 0;
+    	double[] bestValidationLogits = null; // a copy of the logits at bestNumTrees (only kept when using patience)
+    	boolean stopped = false;
+    	
+    	try {
+    		for (int treeId = 0; treeId < numTrees; treeId++) {
+    			rowSampler.sample(gradients);
+    			partition.reset(rowSampler);
+    			AbstractNode rootNode;
+    			if (config.getGrowth() == Config.Growth.LEVEL_WISE) {
+    				rootNode = LevelWiseGrower.grow(context);
+    			} else if (config.getGrowth() == Config.Growth.LEAF_WISE) {
+    				rootNode = LeafWiseGrower.grow(context);
+    			} else {
+    				rootNode = new LeafNode(context);
+    				rootNode = rootNode.split(context);
+    			}
+    			rowSampler.incrementUnsampled(rootNode, context);
+    			trainedTrees.add(rootNode);
+    		
+    			if (checkpointer.isDue(numBaseTrees + trainedTrees.size())) {
+    				// the trees (which won't change again) and the generators' state are taken now,
+    				// and the model is put together and saved on the checkpoint thread
+    				List<AbstractNode> treesSoFar = new ArrayList<>(trainedTrees);
+    				byte[] checkpointState = Checkpointer.saveRandomState(featureSelector, rowSampler);
+    				checkpointer.submit(path -> assemble(base, treesSoFar, config, featureNames).save(path, checkpointState));
+    			}
+    		
+    			if (validation != null) {
+    				double validationLoss = addToLogits(rootNode, validation, validationLogits, exec);
+    				if (validationLoss < bestValidationLoss) {
+    					bestValidationLoss = validationLoss;
+    					bestNumTrees = trainedTrees.size();
+    					if (config.getPatience() != null) {
+    						bestValidationLogits = validationLogits.clone();
+    					}
+    				} else if (config.getPatience() != null && trainedTrees.size() - bestNumTrees >= config.getPatience()) {
+    					break;
+    				}
+    				if (monitor != null && !monitor.keepGoing(trainedTrees.size(), validationLoss)) {
+    					stopped = true;
+    					break;
+    				}
+    			}
+    		}
+    	} finally {
+    		checkpointer.finish(); // even if a tree fails, so the checkpoint thread never outlives the run
+    	}
+    	
+    	if (bestValidationLogits != null && bestNumTrees < trainedTrees.size()) {
+    		List<AbstractNode> droppedTrees = trainedTrees.subList(bestNumTrees, trainedTrees.size());
+    		removeFromLogits(droppedTrees, context);
+    		droppedTrees.clear();
+    		validationLogits = bestValidationLogits;
+    	}
         
-        return new GBTModel(trainedTrees, importances);
+        GBTModel model = assemble(base, trainedTrees, config, featureNames);
+        return new TrainingRun(model, gradients.getLogits(), validationLogits, stopped);
+    }
+    
+    // the model of base's trees (if any) followed by trees
+    private static GBTModel assemble(GBTModel base, List<AbstractNode> trees, Config config, String[] featureNames) {
+    	FeatureImportances importances = new FeatureImportances(featureNames);
+    	if (base == null) {
+    		for (AbstractNode tree : trees) {
+    			tree.updateFeatureImportances(importances);
+    		}
+    		return new GBTModel(trees, new ArrayForest(trees), importances, config, featureNames);
+    	}
+    	for (int featureId = 0; featureId < featureNames.length; featureId++) {
+    		importances.increment(featureId, base.importances.getMetricGain(featureId));
+    	}
+    	for (AbstractNode tree : trees) {
+    		tree.updateFeatureImportances(importances);
+    	}
+    	List<AbstractNode> allTrees = null; // a base loaded from file has only its forest
+    	if (base.trees != null) {
+    		allTrees = new ArrayList<>(base.trees);
+    		allTrees.addAll(trees);
+    	}
+    	return new GBTModel(allTrees, new ArrayForest(base.forest, trees), importances, config, featureNames);
+    }
+    
+    // the logits to boost from: base's (taken from data if base was the last to train or predict on it),
+    // or zero with no base. Always a fresh array, for the run to increment.
+    // (predictMargins is called from within exec, so that its parallel stream runs there)
+    private static double[] startingLogits(GBTModel base, Data data, ForkJoinPool exec) {
+    	if (base == null) {
+    		return new double[data.getNumRows()];
+    	}
+    	return data.isFittedBy(base) ? data.copyLogits() : exec.submit(() -> base.predictMargins(data)).join();
+    }
+
+
+    // Takes the increments of trees dropped by early stopping off the training logits again, in one pass at the end
+    // (rather than copying the logits at every improvement). This leaves them as they were to within rounding.
+    private static void removeFromLogits(List<AbstractNode> trees, TrainingContext context) {
+    	double[] logits = context.getGradients().getLogits();
+    	TrainingContext.parallelFor(context.getExec(), logits.length, row -> {
+    		for (int treeId = trees.size() - 1; treeId >= 0; treeId--) {
+    			logits[row] -= trees.get(treeId).findLeaf(context, row).getDeltaLogit();
+    		}
+    	});
+    }
+
+    // Adds a newly built tree to the validation logits, returning the new (mean) log-loss.
+    // The losses are summed block by block, so always in the same order.
+    private static double addToLogits(AbstractNode tree, Data validation, double[] validationLogits,
+    		ForkJoinPool exec) {
+    	int numRows = validation.getNumRows();
+    	int numBlocks = (numRows + predictBlockSize - 1) / predictBlockSize;
+    	double[] blockLosses = new double[numBlocks];
+    	TrainingContext.parallelFor(exec, numBlocks, blockId -> {
+    		int endRow = Math.min((blockId + 1) * predictBlockSize, numRows);
+    		for (int row = blockId * predictBlockSize; row < endRow; row++) {
+    			validationLogits[row] += tree.getLogitIncrement(validation, row);
+    			blockLosses[blockId] += Evaluation.logLoss(validationLogits[row], validation.getLabel(row));
+    		}
+    	});
+    	double sumLoss = 0.0;
+    	for (double blockLoss : blockLosses) {
+    		sumLoss += blockLoss;
+    	}
+    	return sumLoss / numRows;
     }
 
 
-    // for scoring an entire test set in batch
+    // for scoring an entire test set in batch: the logits are left in testData (for evaluate and save)
+    // NB this replaces testData's logits, so it mustn't be called while testData is being trained or validated on
     public void predict(Data testData) {
+    	testData.setLogits(predictMargins(testData));
+    	testData.markAsFitted(this);
+    }
+    
+    // As predict, but returns the logits instead (indexed by row), changing nothing in data: the only state is the
+    // array returned, so any number of models may score the same Data at once (even while it's being trained on).
+    public double[] predictMargins(Data data) {
         
-    	testData.clearLogits();
+    	requireFeatures(data);
     	
-    	testData.getFeatureVectors()
-    		.parallelStream()
-    		.forEach(vector -> {trees.forEach(tree -> {tree.performLogitIncrement(vector);});});
+    	// the rows are scored in blocks, spread across the cores; within a block, one tree at a time
+    	// (this gives exactly the same logits as adding up getLogitIncrement for each tree in turn)
+    	int numRows = data.getNumRows();
+    	double[] margins = new double[numRows];
+    	int numBlocks = (numRows + predictBlockSize - 1) / predictBlockSize;
+    	IntStream.range(0, numBlocks)
+    		.parallel()
+    		.forEach(blockId -> {
+    			int beginRow = blockId * predictBlockSize;
+    			scoreBlock(data, beginRow, Math.min(beginRow + predictBlockSize, numRows), margins);
+    		});
+    	return margins;
+    }
+    
+    // as above, but with the logistic function applied
+    public double[] predictProba(Data data) {
+    	double[] probs = predictMargins(data);
+    	for (int row = 0; row < probs.length; row++) {
+    		double expLogit = Math.exp(probs[row]);
+    		probs[row] = expLogit / (1.0 + expLogit);
+    	}
+    	return probs;
+    }
+    
+    // The logits of data with only the first checkpoints[i] trees, for each i: staged[i][row].
+    // The checkpoints must be in ascending order, between 1 and getNumTrees(). Each block of rows walks the trees
+    // once, keeping a running margin which is copied out at every checkpoint - so each is exactly what predictMargins
+    // would give for the model cut short at that many trees. Like predictMargins, this changes nothing in data.
+    // (Data.evaluate(staged[i], ...) then evaluates the model at each checkpoint.)
+    public double[][] predictStaged(Data data, int[] checkpoints) {
+
+    	for (int index = 0; index < checkpoints.length; index++) {
+    		int previous = (index == 0) ? 0 : checkpoints[index - 1];
+    		if (checkpoints[index] <= previous || checkpoints[index] > forest.getNumTrees()) {
+    			throw new IllegalArgumentException("Checkpoints must be ascending, between 1 and " + forest.getNumTrees()
+    					+ " trees, got " + Arrays.toString(checkpoints) + ".");
+    		}
+    	}
+    	requireFeatures(data);
+
+    	int numRows = data.getNumRows();
+    	double[][] staged = new double[checkpoints.length][numRows];
+    	int numBlocks = (numRows + predictBlockSize - 1) / predictBlockSize;
+    	IntStream.range(0, numBlocks)
+    		.parallel()
+    		.forEach(blockId -> {
+    			int beginRow = blockId * predictBlockSize;
+    			int endRow = Math.min(beginRow + predictBlockSize, numRows);
+    			double[] blockMargins = new double[endRow - beginRow];
+    			int beginTree = 0;
+    			for (int index = 0; index < checkpoints.length; index++) {
+    				forest.addMargins(data, beginRow, endRow, beginTree, checkpoints[index], blockMargins);
+    				System.arraycopy(blockMargins, 0, staged[index], beginRow, blockMargins.length);
+    				beginTree = checkpoints[index];
+    			}
+    		});
+    	return staged;
+    }
+
+    private void requireFeatures(Data data) {
+    	if (data.getNumFeatures() != featureNames.length) {
+    		throw new IllegalArgumentException("Expected " + featureNames.length + " features, got " + data.getNumFeatures() + ".");
+    	}
+    	data.requireColumns("predicting");
+    }
+
+    public int getNumTrees() {
+    	return forest.getNumTrees();
+    }
+
+    // sets the margins of the rows [beginRow, endRow) (margins being indexed by row)
+    private void scoreBlock(Data data, int beginRow, int endRow, double[] margins) {
+    	double[] blockMargins = new double[endRow - beginRow];
+    	forest.addMargins(data, beginRow, endRow, blockMargins);
+    	System.arraycopy(blockMargins, 0, margins, beginRow, blockMargins.length);
+    }
+    
+    // Scores a CSV file (in the format of Data.load) into another, in the format of Data.save, exactly as
+    // Data.load, predict and save would - but without ever holding more than a few chunks of either file.
+    // The chunks (see CsvReader) are parsed, scored and formatted in parallel, while the main thread writes out
+    // the finished ones in order; at most maxChunksInFlight of them are waiting or being worked on at once.
+    public void scoreFile(String inputPath, String outputPath, String labelName) throws IOException {
     	
-    	testData.markAsFitted();
+    	ExecutorService exec = new ForkJoinPool(config.getNumThreads());
+    	int maxChunksInFlight = 2 * config.getNumThreads();
+    	try (CsvReader reader = new CsvReader(inputPath, labelName);
+    			OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(outputPath)))) {
+    		
+    		String[] inputNames = reader.getFeatureIdsToNames();
+    		if (inputNames.length != featureNames.length) {
+    			throw new IllegalArgumentException("Expected " + featureNames.length + " features, got " + inputNames.length + ".");
+    		}
+    		CsvWriter header = new CsvWriter(out);
+    		Data.writeHeader(header, inputNames);
+    		header.flush();
+    		
+    		Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+    		for (int chunkId = 0; chunkId < reader.getNumChunks(); chunkId++) {
+    			if (inFlight.size() == maxChunksInFlight) {
+    				out.write(inFlight.removeFirst().get());
+    			}
+    			int currentChunkId = chunkId;
+    			inFlight.addLast(exec.submit(() -> scoreChunk(reader, currentChunkId, labelName)));
+    		}
+    		while (!inFlight.isEmpty()) {
+    			out.write(inFlight.removeFirst().get());
+    		}
+    	} catch (ExecutionException ex) {
+    		// a chunk's own failure is thrown as it is, just as Data.load would throw it (e.g. for a bad label)
+    		Throwable cause = ex.getCause();
+    		if (cause instanceof UncheckedIOException) {
+    			throw ((UncheckedIOException) cause).getCause();
+    		}
+    		if (cause instanceof RuntimeException) {
+    			throw (RuntimeException) cause;
+    		}
+    		if (cause instanceof Error) {
+    			throw (Error) cause;
+    		}
+    		throw new RuntimeException(ex);
+    	} catch (InterruptedException ex) {
+    		Thread.currentThread().interrupt();
+    		throw new RuntimeException(ex);
+    	} finally {
+    		exec.shutdownNow();
+    	}
+    }
+    
+    // one chunk of scoreFile: the lines of Data.save for the chunk's rows
+    private byte[] scoreChunk(CsvReader reader, int chunkId, String labelName) {
+    	int numRows = reader.getChunkNumRows(chunkId);
+    	double[][] columns = new double[featureNames.length][numRows];
+    	boolean[] labels = new boolean[numRows];
+    	reader.parseChunk(chunkId, columns, labels, 0);
+    	Data chunk = new Data(columns, labels, reader.getFeatureIdsToNames(), labelName);
+    	double[] margins = new double[numRows];
+    	for (int beginRow = 0; beginRow < numRows; beginRow += predictBlockSize) {
+    		scoreBlock(chunk, beginRow, Math.min(beginRow + predictBlockSize, numRows), margins);
+    	}
+    	chunk.setLogits(margins);
+    	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    	try (CsvWriter writer = new CsvWriter(bytes)) {
+    		chunk.writeRows(writer, chunk.allFeatureIds(), 0, numRows);
+    	} catch (IOException ex) {
+    		throw new UncheckedIOException(ex); // can't happen
+    	}
+    	return bytes.toByteArray();
+    }
+    
+    
+    // For scoring one datapoint at a time (e.g. when serving requests).
+    // features must be in the same order as the feature columns of the training data (i.e. without the label),
+    // with NaN for any missing value.
+    // Allocates nothing and changes nothing, so any number of threads may call this at once.
+    public double predictMargin(double[] features) {
+    	if (features.length != featureNames.length) {
+    		throw new IllegalArgumentException("Expected " + featureNames.length + " features, got " + features.length + ".");
+    	}
+    	return forest.getMargin(features);
+    }
+    
+    // as above, but with the logistic function applied
+    public double predictProba(double[] features) {
+    	double expLogit = Math.exp(predictMargin(features));
+    	return expLogit / (1.0 + expLogit);
+    }
+    
+    
+    /* FILE FORMAT (all big-endian, as written by DataOutputStream):
+     * magic (int), version (int), header length (int)
+     * header: config, feature names, feature importances, number of trees and nodes, root ids,
+     *         then only in a checkpoint, the length and bytes of the random generators' state (see resume)
+     * nodes: Forest.bytesPerNode each (see Forest.writeNodes), to the end of the file
+     */
+    public void save(Path path) throws IOException {
+    	save(path, null);
+    }
+    
+    // checkpointState is null, except when saving a checkpoint
+    private void save(Path path, byte[] checkpointState) throws IOException {
+    	
+    	ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+    	DataOutputStream header = new DataOutputStream(headerBytes);
+    	config.write(header);
+    	header.writeInt(featureNames.length);
+    	for (int featureId = 0; featureId < featureNames.length; featureId++) {
+    		header.writeUTF(featureNames[featureId]);
+    		header.writeDouble(importances.getMetricGain(featureId));
+    	}
+    	forest.writeTrees(header);
+    	if (checkpointState != null) {
+    		header.writeInt(checkpointState.length);
+    		header.write(checkpointState);
+    	}
+    	header.close();
+    	
+    	try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+    		out.writeInt(fileMagic);
+    		out.writeInt(fileVersion);
+    		out.writeInt(headerBytes.size());
+    		headerBytes.writeTo(out);
+    		forest.writeNodes(out);
+    	}
+    }
+    
+    // Only the header is read in: the nodes are memory-mapped and scored straight from the file,
+    // so even a very large model is ready at once (and pages in as it's used).
+    public static GBTModel load(Path path) throws IOException {
+    	
+    	try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+    		
+    		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+    		if (in.readInt() != fileMagic) {
+    			throw new IOException("Not a model file: " + path);
+    		}
+    		int version = in.readInt();
+    		if (version < 1 || version > fileVersion) {
+    			throw new IOException("Unsupported model file version " + version + " (expected up to " + fileVersion + ").");
+    		}
+    		byte[] headerBytes = new byte[in.readInt()];
+    		in.readFully(headerBytes);
+    		long nodesOffset = 3 * Integer.BYTES + headerBytes.length;
+    		
+    		DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes));
+    		Config config = Config.read(header, version);
+    		String[] featureNames = new String[header.readInt()];
+    		double[] metricGains = new double[featureNames.length];
+    		for (int featureId = 0; featureId < featureNames.length; featureId++) {
+    			featureNames[featureId] = header.readUTF();
+    			metricGains[featureId] = header.readDouble();
+    		}
+    		FeatureImportances importances = new FeatureImportances(featureNames);
+    		for (int featureId = 0; featureId < featureNames.length; featureId++) {
+    			importances.increment(featureId, metricGains[featureId]);
+    		}
+    		int[] rootIds = new int[header.readInt()];
+    		int numNodes = header.readInt();
+    		for (int treeId = 0; treeId < rootIds.length; treeId++) {
+    			rootIds[treeId] = header.readInt();
+    		}
+    		
+    		byte[] checkpointState = null;
+    		if (header.available() > 0) {
+    			checkpointState = new byte[header.readInt()];
+    			header.readFully(checkpointState);
+    		}
+    		
+    		// NB the mapping stays valid after the channel is closed
+    		Forest forest = new MappedForest(channel, nodesOffset, rootIds, numNodes);
+    		GBTModel model = new GBTModel(null, forest, importances, config, featureNames);
+    		model.checkpointState = checkpointState;
+    		return model;
+    	}
     }
 
 }
@@ -0,0 +1,42 @@
+package model;
+
+// The sums of the first and second derivatives over a node's rows, and the number of rows.
+// Each node's sums are known before it's split (its parent's split worked them out), so that a split can find
+// the sums over the rows missing the feature by subtraction, without ever visiting those rows.
+class GradientSums {
+
+    private double firstDeriv;
+    private double secondDeriv;
+    private int numRows;
+
+    GradientSums(double firstDeriv, double secondDeriv, int numRows) {
+        this.firstDeriv = firstDeriv;
+        this.secondDeriv = secondDeriv;
+        this.numRows = numRows;
+    }
+
+    // over the rows in the segment [begin, end) of rowIds
+    static GradientSums of(Gradients gradients, int[] rowIds, int begin, int end) {
+        double sumFirstDerivs = 0.0;
+        double sumSecondDerivs = 0.0;
+        for (int position = begin; position < end; position++) {
+            int row = rowIds[position];
+            sumFirstDerivs += gradients.getFirstDeriv(row);
+            sumSecondDerivs += gradients.getSecondDeriv(row);
+        }
+        return new GradientSums(sumFirstDerivs, sumSecondDerivs, end - begin);
+    }
+
+    double getFirstDeriv() {
+        return firstDeriv;
+    }
+
+    double getSecondDeriv() {
+        return secondDeriv;
+    }
+
+    int getNumRows() {
+        return numRows;
+    }
+
+}
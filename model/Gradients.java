@@ -0,0 +1,68 @@
+package model;
+
+import java.util.concurrent.ForkJoinPool;
+
+// First and second derivatives of the entropy for every row of the training data.
+// Computed once up front, and then only updated for the rows whose logit changes
+// (rather than re-evaluating the logistic function every time a split or leaf needs them).
+// The logits belong to the training run, not to data (so any number of runs may share data - see ConfigSearch).
+class Gradients {
+
+    private Data data;
+    private double[] logits; // the starting logits, incremented as each leaf is finalised
+    private double[] firstDerivs;
+    private double[] secondDerivs;
+
+    // (computed on exec, the run's pool)
+    Gradients(Data data, double[] logits, ForkJoinPool exec) {
+        this.data = data;
+        this.logits = logits;
+        this.firstDerivs = new double[data.getNumRows()];
+        this.secondDerivs = new double[data.getNumRows()];
+        TrainingContext.parallelFor(exec, data.getNumRows(), row -> update(row));
+    }
+
+    double getFirstDeriv(int row) {
+        return firstDerivs[row];
+    }
+
+    double getSecondDeriv(int row) {
+        return secondDerivs[row];
+    }
+
+    double[] getLogits() {
+        return logits;
+    }
+
+    // for GOSS (see RowSampler): scales up a sampled row's derivatives, until its logit is next incremented
+    void scale(int row, double factor) {
+        firstDerivs[row] *= factor;
+        secondDerivs[row] *= factor;
+    }
+
+    // for a row which wasn't sampled for this tree (so isn't in any leaf's segment)
+    void incrementLogit(int row, double deltaLogit) {
+        logits[row] += deltaLogit;
+        update(row);
+    }
+
+    // applies a leaf's increment to the logits of its rows, and brings their derivatives up to date
+    void incrementLogits(int[] rowIds, int begin, int end, double deltaLogit) {
+        for (int position = begin; position < end; position++) {
+            int row = rowIds[position];
+            logits[row] += deltaLogit;
+            update(row);
+        }
+    }
+
+    private void update(int row) {
+        // apply logistic function
+        double expLogit = Math.exp(logits[row]);
+        double prob = expLogit / (1.0 + expLogit);
+        // first derivative of entropy
+        firstDerivs[row] = data.getLabel(row) ? prob - 1.0 : prob;
+        // second derivative of entropy
+        secondDerivs[row] = prob * (1.0 - prob);
+    }
+
+}
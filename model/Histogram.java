@@ -0,0 +1,90 @@
+package model;
+
+// sums of first and second derivatives (and counts) per bin, for a single feature in a single node
+// (with one more bin on the end, for the missing values - see FeatureBins.getMissingBinId)
+class Histogram {
+
+    private double[] firstDerivs;
+    private double[] secondDerivs;
+    private int[] counts;
+
+    private Histogram(int numBins) {
+        firstDerivs = new double[numBins];
+        secondDerivs = new double[numBins];
+        counts = new int[numBins];
+    }
+
+    // From the rows in the segment [begin, end) of rowIds, whose sums are nodeSums.
+    // For a sparse feature, only the rows with entries are visited: the default value's bin (the missing bin, if the
+    // default is missing) gets whatever's left over.
+    static Histogram build(int featureId, FeatureBins bins, Gradients gradients, int[] rowIds, int begin, int end,
+            GradientSums nodeSums) {
+        Histogram histogram = new Histogram(bins.getNumBins(featureId) + 1);
+        if (bins.isSparse(featureId)) {
+            bins.forEachEntry(featureId, rowIds, begin, end, (row, binId) -> {
+                histogram.firstDerivs[binId] += gradients.getFirstDeriv(row);
+                histogram.secondDerivs[binId] += gradients.getSecondDeriv(row);
+                histogram.counts[binId]++;
+            });
+            histogram.addRowsLeftOver(bins.getDefaultBinId(featureId), nodeSums);
+            return histogram;
+        }
+        for (int position = begin; position < end; position++) {
+            int row = rowIds[position];
+            int binId = bins.getBinId(featureId, row);
+            histogram.firstDerivs[binId] += gradients.getFirstDeriv(row);
+            histogram.secondDerivs[binId] += gradients.getSecondDeriv(row);
+            histogram.counts[binId]++;
+        }
+        return histogram;
+    }
+
+    // not counting the missing bin (whose id is this)
+    int getNumBins() {
+        return counts.length - 1;
+    }
+
+    double getFirstDeriv(int binId) {
+        return firstDerivs[binId];
+    }
+
+    double getSecondDeriv(int binId) {
+        return secondDerivs[binId];
+    }
+
+    int getCount(int binId) {
+        return counts[binId];
+    }
+
+    // adds to the given bin the node's sums, less those of every bin so far
+    private void addRowsLeftOver(int binId, GradientSums nodeSums) {
+        int numVisited = 0;
+        double visitedFirstDerivs = 0.0;
+        double visitedSecondDerivs = 0.0;
+        for (int id = 0; id < counts.length; id++) {
+            numVisited += counts[id];
+            visitedFirstDerivs += firstDerivs[id];
+            visitedSecondDerivs += secondDerivs[id];
+        }
+        int numLeftOver = nodeSums.getNumRows() - numVisited;
+        if (numLeftOver > 0) {
+            counts[binId] += numLeftOver;
+            firstDerivs[binId] += nodeSums.getFirstDeriv() - visitedFirstDerivs;
+            secondDerivs[binId] += nodeSums.getSecondDeriv() - visitedSecondDerivs;
+        }
+    }
+
+    // In place: turns the parent's histogram into the histogram of the sibling of other.
+    void subtract(Histogram other) {
+        for (int binId = 0; binId < counts.length; binId++) {
+            firstDerivs[binId] -= other.firstDerivs[binId];
+            secondDerivs[binId] -= other.secondDerivs[binId];
+            counts[binId] -= other.counts[binId];
+        }
+    }
+
+    long sizeInBytes() {
+        return (long) counts.length * (Double.BYTES + Double.BYTES + Integer.BYTES);
+    }
+
+}
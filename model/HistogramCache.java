@@ -0,0 +1,43 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps track of the memory held by parent histograms which are being kept alive
+// so that the larger child's histograms can be obtained by subtraction.
+// Once the cap is reached, parents drop their histograms and the children recompute from scratch.
+class HistogramCache {
+
+    private final long maxBytes;
+    private final AtomicLong retainedBytes = new AtomicLong(0);
+
+    HistogramCache(Config config) {
+        this.maxBytes = (long) config.getHistogramCacheMB() << 20;
+    }
+
+    boolean tryRetain(long bytes) {
+        while (true) {
+            long current = retainedBytes.get();
+            if (current + bytes > maxBytes) {
+                return false;
+            }
+            if (retainedBytes.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    void release(long bytes) {
+        retainedBytes.addAndGet(-bytes);
+    }
+
+    static long sizeInBytes(Histogram[] histograms) {
+        long bytes = 0;
+        for (Histogram histogram : histograms) {
+            if (histogram != null) {
+                bytes += histogram.sizeInBytes();
+            }
+        }
+        return bytes;
+    }
+
+}
@@ -0,0 +1,171 @@
+package model;
+
+import java.util.concurrent.Callable;
+
+// Alternative to Split, used when config.getNumBins() is set.
+// Rather than sorting the datapoints, we accumulate the derivatives into one bucket per bin,
+// and then only consider splits at the bin edges.
+// As with Split, the missing values are tried on either side of each split.
+class HistogramSplit implements Callable<BranchNode> {
+
+    private Config config;
+    private int featureId;
+    private Gradients gradients;
+    private int[] rowIds; // this is a reference to an array shared by many threads (read only)
+    private int begin; // the node's rows are the segment [begin, end) of rowIds
+    private int end;
+    private int depth;
+    private FeatureBins bins;
+    private Histogram[] histograms; // the node's histograms, indexed by featureId (null if not yet built)
+    private GradientSums nodeSums;
+
+    HistogramSplit(TrainingContext context, int featureId, int begin, int end, int depth, Histogram[] histograms,
+            GradientSums nodeSums) {
+        this.config = context.getConfig();
+        this.featureId = featureId;
+        this.gradients = context.getGradients();
+        this.rowIds = context.getPartition().getRowIds();
+        this.begin = begin;
+        this.end = end;
+        this.depth = depth;
+        this.bins = context.getBins();
+        this.histograms = histograms;
+        this.nodeSums = nodeSums;
+    }
+
+    // given the config, the features and the datapoints in the leafnode, returns the best split point
+    // (the returned BranchNode has no children yet - these are only created for the winning split)
+    @Override
+    public BranchNode call() {
+
+        int totalSamples = end - begin;
+
+        // already checked in LeafNode class, but just in case...
+        if (totalSamples < 2 * config.getMinSamplesLeaf()) {
+            return null;
+        }
+
+        // reuse the histogram if it was obtained by subtraction; otherwise build it
+        // (and store it, in case our children can make use of it)
+        Histogram histogram = histograms[featureId];
+        if (histogram == null) {
+            histogram = Histogram.build(featureId, bins, gradients, rowIds, begin, end, nodeSums);
+            histograms[featureId] = histogram; // each task writes to a different slot
+        }
+        int numBins = histogram.getNumBins();
+        int missingBinId = numBins;
+
+        double sumPresentFirstDerivs = 0.0;
+        double sumPresentSecondDerivs = 0.0;
+        for (int binId = 0; binId < numBins; binId++) {
+            sumPresentFirstDerivs += histogram.getFirstDeriv(binId);
+            sumPresentSecondDerivs += histogram.getSecondDeriv(binId);
+        }
+        int countMissing = histogram.getCount(missingBinId);
+        double sumMissingFirstDerivs = (countMissing > 0) ? histogram.getFirstDeriv(missingBinId) : 0.0;
+        double sumMissingSecondDerivs = (countMissing > 0) ? histogram.getSecondDeriv(missingBinId) : 0.0;
+        double sumAllFirstDerivs = sumPresentFirstDerivs + sumMissingFirstDerivs;
+        double sumAllSecondDerivs = sumPresentSecondDerivs + sumMissingSecondDerivs;
+
+        double entropyDecreaseWithoutSplit = entropyDecrease(sumAllFirstDerivs, sumAllSecondDerivs);
+        double bestEntropyDecrease = entropyDecreaseWithoutSplit - config.getMinGainSplit();
+        // this is the benchmark to beat
+        Integer bestSplitBin = null; // the last bin sent to the left
+        boolean bestMissingGoesLeft = false;
+        GradientSums bestLeftSums = null;
+        GradientSums bestRightSums = null;
+
+        double sumLeftFirstDerivs = 0.0;
+        double sumLeftSecondDerivs = 0.0;
+        int countLeft = 0;
+
+        // NB splitting after the final bin would send every value to the left (see below)
+        for (int binId = 0; binId < numBins - 1; binId++) {
+
+            sumLeftFirstDerivs += histogram.getFirstDeriv(binId);
+            sumLeftSecondDerivs += histogram.getSecondDeriv(binId);
+            countLeft += histogram.getCount(binId);
+
+            if (countLeft + countMissing < config.getMinSamplesLeaf()) {
+                continue;
+            }
+            if (totalSamples - countLeft < config.getMinSamplesLeaf()) {
+                break;
+            }
+
+            // with the missing values sent right...
+            if (countLeft >= config.getMinSamplesLeaf()) {
+                double sumRightFirstDerivs = sumAllFirstDerivs - sumLeftFirstDerivs;
+                double sumRightSecondDerivs = sumAllSecondDerivs - sumLeftSecondDerivs;
+
+                // Calculate metric gain if splitting here
+                double splitEntropyDecrease = entropyDecrease(sumLeftFirstDerivs, sumLeftSecondDerivs)
+                        + entropyDecrease(sumRightFirstDerivs, sumRightSecondDerivs);
+
+                if (splitEntropyDecrease < bestEntropyDecrease) {
+                    bestEntropyDecrease = splitEntropyDecrease;
+                    bestSplitBin = binId;
+                    bestMissingGoesLeft = false;
+                    bestLeftSums = new GradientSums(sumLeftFirstDerivs, sumLeftSecondDerivs, countLeft);
+                    bestRightSums = new GradientSums(sumRightFirstDerivs, sumRightSecondDerivs, totalSamples - countLeft);
+                }
+            }
+
+            // ... or left
+            if (countMissing > 0 && totalSamples - countLeft - countMissing >= config.getMinSamplesLeaf()) {
+                double sumWithMissingFirstDerivs = sumLeftFirstDerivs + sumMissingFirstDerivs;
+                double sumWithMissingSecondDerivs = sumLeftSecondDerivs + sumMissingSecondDerivs;
+                double sumRightFirstDerivs = sumAllFirstDerivs - sumWithMissingFirstDerivs;
+                double sumRightSecondDerivs = sumAllSecondDerivs - sumWithMissingSecondDerivs;
+
+                double splitEntropyDecrease = entropyDecrease(sumWithMissingFirstDerivs, sumWithMissingSecondDerivs)
+                        + entropyDecrease(sumRightFirstDerivs, sumRightSecondDerivs);
+
+                if (splitEntropyDecrease < bestEntropyDecrease) {
+                    bestEntropyDecrease = splitEntropyDecrease;
+                    bestSplitBin = binId;
+                    bestMissingGoesLeft = true;
+                    int countWithMissing = countLeft + countMissing;
+                    bestLeftSums = new GradientSums(sumWithMissingFirstDerivs, sumWithMissingSecondDerivs,
+                            countWithMissing);
+                    bestRightSums = new GradientSums(sumRightFirstDerivs, sumRightSecondDerivs,
+                            totalSamples - countWithMissing);
+                }
+            }
+        }
+
+        // finally, every value to the left and the missing values to the right
+        if (countMissing >= config.getMinSamplesLeaf() && totalSamples - countMissing >= config.getMinSamplesLeaf()) {
+            double splitEntropyDecrease = entropyDecrease(sumPresentFirstDerivs, sumPresentSecondDerivs)
+                    + entropyDecrease(sumMissingFirstDerivs, sumMissingSecondDerivs);
+            if (splitEntropyDecrease < bestEntropyDecrease) {
+                bestEntropyDecrease = splitEntropyDecrease;
+                bestSplitBin = numBins - 1;
+                bestMissingGoesLeft = false;
+                bestLeftSums = new GradientSums(sumPresentFirstDerivs, sumPresentSecondDerivs,
+                        totalSamples - countMissing);
+                bestRightSums = new GradientSums(sumMissingFirstDerivs, sumMissingSecondDerivs, countMissing);
+            }
+        }
+
+        if (bestSplitBin != null) {
+
+            double metricGainFromSplit = bestEntropyDecrease - entropyDecreaseWithoutSplit;
+            // subtract what would have been gained without splitting
+
+            // NB the value <= threshold exactly when the bin id <= bestSplitBin
+            // (after the final bin, there's no threshold short of infinity)
+            double threshold = (bestSplitBin < numBins - 1) ? bins.getThreshold(featureId, bestSplitBin)
+                    : Double.POSITIVE_INFINITY;
+            return new BranchNode(depth, threshold, featureId, bestMissingGoesLeft, metricGainFromSplit,
+                    bestLeftSums, bestRightSums);
+        } else {
+            return null; // return null if no split found
+        }
+    }
+
+    private double entropyDecrease(double sumFirstDerivs, double sumSecondDerivs) {
+        return -0.5 * sumFirstDerivs * sumFirstDerivs / (sumSecondDerivs + config.getL2reg());
+    }
+
+}
@@ -2,24 +2,47 @@ package model;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 // Represents a terminal mode (although this may decide to split later)
 class LeafNode extends AbstractNode {
 
     // also has "depth" inherited from AbstractNode
-    private List<FeatureVector> datapoints;
+    private int begin; // the datapoints in this node are the segment [begin, end) of the RowPartition
+    private int end;
+    // with exact splits, our segment of each feature's sorted ordering: [sortedBegins[f], sortedEnds[f])
+    // (null with histogram splits)
+    private int[] sortedBegins;
+    private int[] sortedEnds;
+    private GradientSums sums; // over our datapoints (until finalised)
     private Double deltaLogit = null; // will be assigned value when finalised
+    private Histogram[] histograms = null; // only used with histogram splits; indexed by featureId
+    private long heldHistogramBytes = 0; // counted against the HistogramCache while we wait to be split
 
-    LeafNode(int depth, List<FeatureVector> datapoints) {
+    LeafNode(int depth, int begin, int end, int[] sortedBegins, int[] sortedEnds, GradientSums sums) {
         super(depth);
-        this.datapoints = datapoints;
+        this.begin = begin;
+        this.end = end;
+        this.sortedBegins = sortedBegins;
+        this.sortedEnds = sortedEnds;
+        this.sums = sums;
     }
-    
+
+    // the root of a new tree, holding every row taking part in it
+    LeafNode(TrainingContext context) {
+        super(1);
+        RowPartition partition = context.getPartition();
+        this.begin = 0;
+        this.end = partition.getNumRows();
+        if (context.getBins() == null) {
+            this.sortedBegins = new int[context.getData().getNumFeatures()];
+            this.sortedEnds = partition.getNumSortedEntries();
+        }
+        this.sums = GradientSums.of(context.getGradients(), partition.getRowIds(), begin, end);
+    }
+
     @Override
     public String toString() {
     	StringBuilder builder = new StringBuilder(super.toString());
@@ -28,76 +51,201 @@ class LeafNode extends AbstractNode {
     	}
     	return builder.toString();
     }
-    
+
     // calculates the deltalogit, then applies this increment to all datapoints
-    private void finalise(Config config) {
-    	
-    	double sumFirstDerivs = datapoints.stream().mapToDouble(vector -> vector.getFirstDeriv()).sum();
-    	double sumSecondDerivs = datapoints.stream().mapToDouble(vector -> vector.getSecondDeriv()).sum();
+    // (leaves never share datapoints, so several leaves may be finalised at once)
+    void finalise(TrainingContext context) {
+
+    	Config config = context.getConfig();
+    	Gradients gradients = context.getGradients();
+    	int[] rowIds = context.getPartition().getRowIds();
+
+    	double sumFirstDerivs = 0.0;
+    	double sumSecondDerivs = 0.0;
+    	for (int position = begin; position < end; position++) {
+    		int row = rowIds[position];
+    		sumFirstDerivs += gradients.getFirstDeriv(row);
+    		sumSecondDerivs += gradients.getSecondDeriv(row);
+    	}
     	deltaLogit = - config.getLearningRate() * sumFirstDerivs / (sumSecondDerivs + config.getL2reg());
     			// Newton-Raphson step
-    	
-    	datapoints.forEach(vector -> {vector.incrementLogit(deltaLogit);} );
-    	
-    	datapoints = null; // clears memory
+
+    	gradients.incrementLogits(rowIds, begin, end, deltaLogit); // also refreshes the derivatives of these rows
+
+    	histograms = null; // clears memory
+    	sortedBegins = null;
+    	sortedEnds = null;
+    	sums = null;
 
     }
 
-    // Splits as far as possible. Returns reference to the fully-split version of this node.
-    @Override
-    AbstractNode split(Config config, FeatureSelector selector, ExecutorService exec) {
+    int getNumDatapoints() {
+    	return end - begin;
+    }
+
+    int getBegin() {
+    	return begin;
+    }
+
+    int getEnd() {
+    	return end;
+    }
+
+    // NB the split points of a split are written straight into these (see RowPartition.rearrange)
+    int[] getSortedBegins() {
+    	return sortedBegins;
+    }
+
+    int[] getSortedEnds() {
+    	return sortedEnds;
+    }
 
+    // false if we've already reached the max depth, or if there are too few datapoints to make two leaves
+    boolean maySplit(Config config) {
         boolean tooDeep = (config.getMaxTreeDepth() != null) && (depth >= config.getMaxTreeDepth());
+        boolean notEnoughPoints = (end - begin < 2 * config.getMinSamplesLeaf());
+        return !tooDeep && !notEnoughPoints;
+    }
+
+    // one task per sampled feature, each returning the best split using that feature (or null)
+    List<Callable<BranchNode>> createSplittingTasks(TrainingContext context) {
+
+    	List<Integer> featureSelection = context.getSelector().sampleFeatures();
+
+    	if (context.getBins() != null && histograms == null) {
+    		histograms = new Histogram[context.getBins().getNumFeatures()]; // to be filled in by the splitting tasks
+    	}
+
+    	List<Callable<BranchNode>> splittingTasks = new ArrayList<>();
+    	for (Integer featureId : featureSelection) {
+    		if (context.getBins() == null) {
+    			splittingTasks.add(new Split(context, featureId, sortedBegins[featureId], sortedEnds[featureId],
+    					depth, sums));
+    		} else {
+    			splittingTasks.add(new HistogramSplit(context, featureId, begin, end, depth, histograms, sums));
+    		}
+    	}
+    	return splittingTasks;
+    }
+
+    // the best of the splits found by the splitting tasks, or null if none of them found a valid split
+    static BranchNode chooseBestSplit(List<Future<BranchNode>> splittingOutcomes)
+    		throws ExecutionException, InterruptedException {
+
+    	BranchNode bestSplit = null; // null for the moment; will remain null until we find a valid split
+    	Double bestMetricGain = null;
+
+    	for (Future<BranchNode> outcome : splittingOutcomes) {
+    		BranchNode splitUsingThisFeature = outcome.get();
+        	if (splitUsingThisFeature != null) {
+            	double metricGainWithThisFeature = splitUsingThisFeature.getMetricGain();
+            	boolean improvesMetric = (bestMetricGain == null) || (metricGainWithThisFeature < bestMetricGain);
+            		// NB the more *negative* the better
+            	if (improvesMetric) {
+                	bestSplit = splitUsingThisFeature;
+                	bestMetricGain = metricGainWithThisFeature;
+            	}
+        	}
+    	}
+    	return bestSplit;
+    }
+
+    // Hands our datapoints (and possibly our histograms) over to the children of bestSplit.
+    // NB the datapoints are only marked as left or right here; RowPartition.rearrange moves them.
+    void applySplit(BranchNode bestSplit, TrainingContext context) {
+
+    	Config config = context.getConfig();
+
+    	// keep our histograms alive for the children, unless this would take us over the memory cap
+    	// (or unless the children are already at the max depth, so won't need any histograms)
+    	boolean childrenMaySplit = (config.getMaxTreeDepth() == null) || (depth + 1 < config.getMaxTreeDepth());
+    	if (histograms != null && childrenMaySplit) {
+    		long bytes = HistogramCache.sizeInBytes(histograms);
+    		if (context.getCache().tryRetain(bytes)) {
+    			bestSplit.retainParentHistograms(histograms, bytes);
+    		}
+    	}
+    	histograms = null;
+
+    	bestSplit.growChildren(context, begin, end, sortedBegins, sortedEnds);
+    }
+
+    // tasks which build our histograms for every feature that the parent has a histogram for
+    // (so that our sibling can obtain all of these by subtraction)
+    List<Callable<Histogram>> createHistogramTasks(Histogram[] parentHistograms, TrainingContext context) {
+
+    	histograms = new Histogram[parentHistograms.length];
+
+    	List<Callable<Histogram>> buildingTasks = new ArrayList<>();
+    	for (int featureId = 0; featureId < parentHistograms.length; featureId++) {
+    		if (parentHistograms[featureId] != null) {
+    			int id = featureId;
+    			buildingTasks.add(() -> {
+    				histograms[id] = Histogram.build(id, context.getBins(), context.getGradients(),
+    						context.getPartition().getRowIds(), begin, end, sums);
+    				return histograms[id]; // each task writes to a different slot
+    			});
+    		}
+    	}
+    	return buildingTasks;
+    }
+
+    // obtains our histograms as parent minus sibling, without touching our own datapoints
+    // NB this reuses (and overwrites) the parent's histograms
+    void subtractHistograms(Histogram[] parentHistograms, LeafNode sibling) {
+    	for (int featureId = 0; featureId < parentHistograms.length; featureId++) {
+    		if (parentHistograms[featureId] != null) {
+    			parentHistograms[featureId].subtract(sibling.histograms[featureId]);
+    		}
+    	}
+    	histograms = parentHistograms;
+    }
+
+    // For leaves which wait a while before being split (see LeafWiseGrower): our histograms are only kept
+    // if the memory cap allows, otherwise they're dropped (and our children will build their own).
+    void holdHistograms(HistogramCache cache) {
+    	if (histograms != null) {
+    		long bytes = HistogramCache.sizeInBytes(histograms);
+    		if (cache.tryRetain(bytes)) {
+    			heldHistogramBytes = bytes;
+    		} else {
+    			histograms = null;
+    		}
+    	}
+    }
+
+    void releaseHeldHistograms(HistogramCache cache) {
+    	cache.release(heldHistogramBytes);
+    	heldHistogramBytes = 0;
+    }
+
+    // Splits as far as possible (depth first). Returns reference to the fully-split version of this node.
+    @Override
+    AbstractNode split(TrainingContext context) {
 
         // if we've already reached the max depth, then we should not do the split
-        if (tooDeep) {
-        	finalise(config);
+        if (!maySplit(context.getConfig())) {
+        	finalise(context);
             return this;
         }
-        
-        boolean notEnoughPoints = (datapoints.size() < 2 * config.getMinSamplesLeaf());
-        if (notEnoughPoints) {
-        	finalise(config);
-        	return this;
-        }
-        
+
         try {
         	// will now attempt to choose best split (and best splitting feature)
-        	List<Integer> featureSelection = selector.sampleFeatures();
-        	BranchNode bestSplit = null; // null for the moment; will remain null until we find a valid split
-        	Double bestMetricGain = null;
-
-        	List<Split> splittingTasks = new ArrayList<>();
-        	for (Integer featureId : featureSelection) {
-        		Split task = new Split(config, featureId, datapoints, depth);
-        		splittingTasks.add(task);
-        	}
-        
-        	List<Future<BranchNode>> splittingOutcomes = exec.invokeAll(splittingTasks);
-        
-        	for (Future<BranchNode> outcome : splittingOutcomes) {
-        		BranchNode splitUsingThisFeature = outcome.get();
-            	if (splitUsingThisFeature != null) {
-                	double metricGainWithThisFeature = splitUsingThisFeature.getMetricGain();
-                	boolean improvesMetric = (bestMetricGain == null) || (metricGainWithThisFeature < bestMetricGain);
-                		// NB the more *negative* the better
-                	if (improvesMetric) {
-                    	bestSplit = splitUsingThisFeature;
-                    	bestMetricGain = metricGainWithThisFeature;
-                	}
-            	} 
-        	}
-
+        	List<Future<BranchNode>> splittingOutcomes = context.getExec().invokeAll(createSplittingTasks(context));
+        	BranchNode bestSplit = chooseBestSplit(splittingOutcomes);
 
         	// if we're unable to find any feature with a split that satisfy minSamplesLeaf, then we can't split.
         	if (bestSplit == null) {
-        		finalise(config);
+        		finalise(context);
             	return this;
         	}
 
+        	applySplit(bestSplit, context);
+        	context.getPartition().rearrange(bestSplit);
+
         	// In this final most interesting case where we DO a split, the output is a BranchNode, not a LeafNode
-        	return bestSplit.split(config, selector, exec);
-        	
+        	return bestSplit.split(context);
+
         } catch (ExecutionException | InterruptedException ex) {
         	throw new RuntimeException(ex);
         }
@@ -105,13 +253,32 @@ class LeafNode extends AbstractNode {
 
 
     @Override
-    void performLogitIncrement(FeatureVector vector) {
-        vector.incrementLogit(deltaLogit);
+    double getLogitIncrement(Data data, int row) {
+        return deltaLogit;
+    }
+
+    @Override
+    LeafNode findLeaf(TrainingContext context, int row) {
+    	return this;
+    }
+    
+    double getDeltaLogit() {
+    	return deltaLogit;
     }
     
     @Override
     void updateFeatureImportances(FeatureImportances importances) {
     	// do nothing
     }
+    
+    @Override
+    int getNumNodes() {
+    	return 1;
+    }
+    
+    @Override
+    void flatten(ArrayForest forest, int nodeId) {
+    	forest.setLeaf(nodeId, deltaLogit);
+    }
 
 }
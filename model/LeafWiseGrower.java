@@ -0,0 +1,144 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+// Grows a tree best first: of all the current leaves, the one whose best split gains the most is always
+// expanded next, until the tree has config.getMaxLeaves() leaves (or no leaf can be split any further).
+// For the same number of leaves, this fits better than growing every branch to the same depth.
+class LeafWiseGrower {
+
+    // a leaf waiting to be split, together with the best split we've found for it
+    private static class Candidate {
+
+        LeafNode leaf;
+        BranchNode bestSplit;
+        BranchNode parent; // null for the root
+
+        Candidate(LeafNode leaf, BranchNode bestSplit, BranchNode parent) {
+            this.leaf = leaf;
+            this.bestSplit = bestSplit;
+            this.parent = parent;
+        }
+    }
+
+    // returns the root of the fully grown tree
+    static AbstractNode grow(TrainingContext context) {
+
+        Config config = context.getConfig();
+        Integer maxLeaves = config.getMaxLeaves(); // null means no limit
+        HistogramCache cache = context.getCache();
+
+        // NB the more *negative* the gain, the better
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(
+                Comparator.comparingDouble(candidate -> candidate.bestSplit.getMetricGain()));
+
+        LeafNode rootLeaf = new LeafNode(context);
+        AbstractNode rootNode = rootLeaf;
+        int numLeaves = 1;
+
+        try {
+            evaluate(rootLeaf, null, candidates, context);
+
+            while (!candidates.isEmpty() && (maxLeaves == null || numLeaves < maxLeaves)) {
+
+                Candidate candidate = candidates.poll();
+                LeafNode leaf = candidate.leaf;
+                BranchNode branch = candidate.bestSplit;
+
+                leaf.releaseHeldHistograms(cache); // applySplit decides for itself whether to keep them
+                leaf.applySplit(branch, context);
+                context.getPartition().rearrange(branch);
+                if (candidate.parent == null) {
+                    rootNode = branch;
+                } else {
+                    candidate.parent.replaceChild(leaf, branch);
+                }
+                numLeaves++; // one leaf has become two
+
+                // the smaller child builds its histograms, the larger child subtracts
+                List<Callable<Histogram>> histogramTasks = branch.createChildHistogramTasks(context);
+                for (Future<Histogram> outcome : context.getExec().invokeAll(histogramTasks)) {
+                    outcome.get();
+                }
+                branch.subtractChildHistograms();
+
+                evaluateSiblings(branch, candidates, context);
+                branch.releaseHistograms(cache);
+            }
+        } catch (ExecutionException | InterruptedException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        // out of budget: whatever is still waiting stays a leaf
+        List<Callable<Void>> finalisingTasks = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            candidate.leaf.releaseHeldHistograms(cache);
+            finalisingTasks.add(() -> {candidate.leaf.finalise(context); return null;});
+        }
+        try {
+            for (Future<Void> outcome : context.getExec().invokeAll(finalisingTasks)) {
+                outcome.get();
+            }
+        } catch (ExecutionException | InterruptedException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        return rootNode;
+    }
+
+    // finds the best split of a single leaf, and queues it up (or finalises the leaf if it can't split)
+    private static void evaluate(LeafNode leaf, BranchNode parent, PriorityQueue<Candidate> candidates,
+            TrainingContext context) throws ExecutionException, InterruptedException {
+
+        BranchNode bestSplit = null;
+        if (leaf.maySplit(context.getConfig())) {
+            bestSplit = LeafNode.chooseBestSplit(context.getExec().invokeAll(leaf.createSplittingTasks(context)));
+        }
+        enqueueOrFinalise(leaf, bestSplit, parent, candidates, context);
+    }
+
+    // as above, for both children of a branch, with both children's splitting tasks in one batch
+    private static void evaluateSiblings(BranchNode branch, PriorityQueue<Candidate> candidates,
+            TrainingContext context) throws ExecutionException, InterruptedException {
+
+        LeafNode[] children = {branch.getLeftLeaf(), branch.getRightLeaf()};
+        List<Callable<BranchNode>> splittingTasks = new ArrayList<>();
+        int[] numTasks = new int[children.length];
+        for (int childId = 0; childId < children.length; childId++) {
+            if (children[childId].maySplit(context.getConfig())) {
+                List<Callable<BranchNode>> tasks = children[childId].createSplittingTasks(context);
+                numTasks[childId] = tasks.size();
+                splittingTasks.addAll(tasks);
+            }
+        }
+        List<Future<BranchNode>> splittingOutcomes = context.getExec().invokeAll(splittingTasks);
+
+        int firstTask = 0;
+        for (int childId = 0; childId < children.length; childId++) {
+            BranchNode bestSplit = null;
+            if (numTasks[childId] > 0) {
+                bestSplit = LeafNode.chooseBestSplit(
+                        splittingOutcomes.subList(firstTask, firstTask + numTasks[childId]));
+                firstTask += numTasks[childId];
+            }
+            enqueueOrFinalise(children[childId], bestSplit, branch, candidates, context);
+        }
+    }
+
+    private static void enqueueOrFinalise(LeafNode leaf, BranchNode bestSplit, BranchNode parent,
+            PriorityQueue<Candidate> candidates, TrainingContext context) {
+        if (bestSplit == null) {
+            leaf.finalise(context);
+        } else {
+            leaf.holdHistograms(context.getCache()); // kept for its children, if the memory cap allows
+            candidates.add(new Candidate(leaf, bestSplit, parent));
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// Grows a tree breadth first: all the leaves at one depth are expanded together, as a single batch of
+// (node x feature) tasks. Unlike the depth-first recursion (which only has one node's features to work on
+// at a time), this keeps the pool busy even near the bottom of the tree, where each node has few datapoints.
+class LevelWiseGrower {
+
+    // returns the root of the fully grown tree
+    static AbstractNode grow(TrainingContext context) {
+
+        Config config = context.getConfig();
+        ExecutorService exec = context.getExec();
+
+        LeafNode rootLeaf = new LeafNode(context);
+        AbstractNode rootNode = rootLeaf;
+
+        List<LeafNode> frontier = new ArrayList<>(); // the leaves at the current depth
+        List<BranchNode> frontierParents = new ArrayList<>(); // frontierParents.get(i) is the parent of frontier.get(i)
+        frontier.add(rootLeaf);
+        frontierParents.add(null);
+        List<BranchNode> previousLevel = new ArrayList<>(); // the branches whose children make up the frontier
+
+        try {
+            while (!frontier.isEmpty()) {
+
+                // histograms of sibling pairs: the smaller children build theirs, the larger ones subtract
+                List<Callable<Histogram>> histogramTasks = new ArrayList<>();
+                for (BranchNode branch : previousLevel) {
+                    histogramTasks.addAll(branch.createChildHistogramTasks(context));
+                }
+                waitForAll(exec.invokeAll(histogramTasks));
+                for (BranchNode branch : previousLevel) {
+                    branch.subtractChildHistograms();
+                }
+
+                // search for the best split of every splittable leaf at once
+                List<LeafNode> candidates = new ArrayList<>();
+                List<Integer> numTasksPerCandidate = new ArrayList<>();
+                List<Callable<BranchNode>> splittingTasks = new ArrayList<>();
+                for (LeafNode leaf : frontier) {
+                    if (leaf.maySplit(config)) {
+                        List<Callable<BranchNode>> tasks = leaf.createSplittingTasks(context);
+                        candidates.add(leaf);
+                        numTasksPerCandidate.add(tasks.size());
+                        splittingTasks.addAll(tasks);
+                    }
+                }
+                List<Future<BranchNode>> splittingOutcomes = exec.invokeAll(splittingTasks);
+
+                List<BranchNode> bestSplits = new ArrayList<>(frontier.size()); // null where the leaf stays a leaf
+                int candidateId = 0;
+                int firstTask = 0;
+                for (LeafNode leaf : frontier) {
+                    if (candidateId < candidates.size() && candidates.get(candidateId) == leaf) {
+                        int numTasks = numTasksPerCandidate.get(candidateId);
+                        List<Future<BranchNode>> outcomes = splittingOutcomes.subList(firstTask, firstTask + numTasks);
+                        bestSplits.add(LeafNode.chooseBestSplit(outcomes));
+                        firstTask += numTasks;
+                        candidateId++;
+                    } else {
+                        bestSplits.add(null);
+                    }
+                }
+
+                // barrier: every leaf that stops here is finalised at once, then the rest are split at once
+                List<Callable<Void>> finalisingTasks = new ArrayList<>();
+                List<Callable<Void>> applyingTasks = new ArrayList<>();
+                List<BranchNode> appliedSplits = new ArrayList<>();
+                for (int leafId = 0; leafId < frontier.size(); leafId++) {
+                    LeafNode leaf = frontier.get(leafId);
+                    BranchNode bestSplit = bestSplits.get(leafId);
+                    if (bestSplit == null) {
+                        finalisingTasks.add(() -> {leaf.finalise(context); return null;});
+                    } else {
+                        applyingTasks.add(() -> {leaf.applySplit(bestSplit, context); return null;});
+                        appliedSplits.add(bestSplit);
+                    }
+                }
+                waitForAll(exec.invokeAll(finalisingTasks));
+                waitForAll(exec.invokeAll(applyingTasks));
+                context.getPartition().rearrangeAll(appliedSplits, exec);
+
+                // both children of every branch in the previous level have now been split (or finalised)
+                for (BranchNode branch : previousLevel) {
+                    branch.releaseHistograms(context.getCache());
+                }
+
+                // move down a level
+                List<LeafNode> nextFrontier = new ArrayList<>();
+                List<BranchNode> nextFrontierParents = new ArrayList<>();
+                List<BranchNode> currentLevel = new ArrayList<>();
+                for (int leafId = 0; leafId < frontier.size(); leafId++) {
+                    BranchNode bestSplit = bestSplits.get(leafId);
+                    if (bestSplit == null) {
+                        continue;
+                    }
+                    BranchNode parent = frontierParents.get(leafId);
+                    if (parent == null) {
+                        rootNode = bestSplit;
+                    } else {
+                        parent.replaceChild(frontier.get(leafId), bestSplit);
+                    }
+                    nextFrontier.add(bestSplit.getLeftLeaf());
+                    nextFrontier.add(bestSplit.getRightLeaf());
+                    nextFrontierParents.add(bestSplit);
+                    nextFrontierParents.add(bestSplit);
+                    currentLevel.add(bestSplit);
+                }
+                frontier = nextFrontier;
+                frontierParents = nextFrontierParents;
+                previousLevel = currentLevel;
+            }
+        } catch (ExecutionException | InterruptedException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        return rootNode;
+    }
+
+    private static <T> void waitForAll(List<Future<T>> outcomes) throws ExecutionException, InterruptedException {
+        for (Future<T> outcome : outcomes) {
+            outcome.get(); // rethrows any exception from the task
+        }
+    }
+
+}
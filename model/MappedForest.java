@@ -0,0 +1,152 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// The nodes of a saved model, read straight out of the (memory-mapped) model file rather than copied onto the heap.
+// A single mapping can't exceed 2GB, so the nodes are mapped in chunks of whole trees: scoring a tree then only
+// needs that tree's chunk, and the offset of the chunk's first node.
+class MappedForest extends Forest {
+
+    private static final long maxChunkBytes = Integer.MAX_VALUE;
+
+    private ByteBuffer[] chunks; // only ever read with absolute gets, so safe to share between threads
+    private int[] chunkFirstNodeIds;
+    private int[] treeChunkIds; // the chunk holding each tree
+    private int[] rootIds;
+    private int numNodes;
+
+    // the nodes start at nodesOffset within the channel's file
+    MappedForest(FileChannel channel, long nodesOffset, int[] rootIds, int numNodes) throws IOException {
+        this.rootIds = rootIds;
+        this.numNodes = numNodes;
+
+        long expectedSize = nodesOffset + (long) numNodes * bytesPerNode;
+        if (channel.size() != expectedSize) {
+            throw new IOException("Model file should be " + expectedSize + " bytes, but is " + channel.size() + ".");
+        }
+
+        // each tree occupies the slots from its root up to the next tree's root
+        treeChunkIds = new int[rootIds.length];
+        int[] firstNodeIds = new int[rootIds.length + 1];
+        int numChunks = 0;
+        for (int treeId = 0; treeId < rootIds.length; treeId++) {
+            int treeEnd = (treeId + 1 < rootIds.length) ? rootIds[treeId + 1] : numNodes;
+            if ((long) (treeEnd - rootIds[treeId]) * bytesPerNode > maxChunkBytes) {
+                throw new IOException("Tree " + treeId + " is too large to be mapped.");
+            }
+            boolean startNewChunk = (numChunks == 0)
+                    || (long) (treeEnd - firstNodeIds[numChunks - 1]) * bytesPerNode > maxChunkBytes;
+            if (startNewChunk) {
+                firstNodeIds[numChunks] = rootIds[treeId];
+                numChunks++;
+            }
+            treeChunkIds[treeId] = numChunks - 1;
+        }
+        firstNodeIds[numChunks] = numNodes;
+
+        chunks = new ByteBuffer[numChunks];
+        for (int chunkId = 0; chunkId < numChunks; chunkId++) {
+            long chunkNodes = firstNodeIds[chunkId + 1] - firstNodeIds[chunkId];
+            chunks[chunkId] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    nodesOffset + (long) firstNodeIds[chunkId] * bytesPerNode, chunkNodes * bytesPerNode);
+        }
+        chunkFirstNodeIds = Arrays.copyOf(firstNodeIds, numChunks);
+    }
+
+    @Override
+    int getNumTrees() {
+        return rootIds.length;
+    }
+
+    @Override
+    int getNumNodes() {
+        return numNodes;
+    }
+
+    @Override
+    int getRootId(int treeId) {
+        return rootIds[treeId];
+    }
+
+    // NB the following three are for occasional use: scoring goes through the tree's chunk directly
+
+    @Override
+    int getFeatureId(int nodeId) {
+        int chunkId = findChunkId(nodeId);
+        return chunks[chunkId].getInt((nodeId - chunkFirstNodeIds[chunkId]) * bytesPerNode);
+    }
+
+    @Override
+    int getLeftChildId(int nodeId) {
+        int chunkId = findChunkId(nodeId);
+        return chunks[chunkId].getInt((nodeId - chunkFirstNodeIds[chunkId]) * bytesPerNode + 4) & ~missingGoesLeftFlag;
+    }
+
+    @Override
+    boolean getMissingGoesLeft(int nodeId) {
+        int chunkId = findChunkId(nodeId);
+        return (chunks[chunkId].getInt((nodeId - chunkFirstNodeIds[chunkId]) * bytesPerNode + 4) & missingGoesLeftFlag) != 0;
+    }
+
+    @Override
+    double getValue(int nodeId) {
+        int chunkId = findChunkId(nodeId);
+        return chunks[chunkId].getDouble((nodeId - chunkFirstNodeIds[chunkId]) * bytesPerNode + 8);
+    }
+
+    private int findChunkId(int nodeId) {
+        int position = Arrays.binarySearch(chunkFirstNodeIds, nodeId);
+        return (position >= 0) ? position : -position - 2;
+    }
+
+    // the child of the branch at offset which the value goes to
+    // (NB a NaN fails every comparison, so !(value > threshold) sends it left)
+    private static int getChildId(ByteBuffer chunk, int offset, double value) {
+        int link = chunk.getInt(offset + 4);
+        double threshold = chunk.getDouble(offset + 8);
+        boolean goesLeft = ((link & missingGoesLeftFlag) != 0) ? !(value > threshold) : value <= threshold;
+        int leftChildId = link & ~missingGoesLeftFlag;
+        return goesLeft ? leftChildId : leftChildId + 1;
+    }
+
+    @Override
+    double getMargin(double[] features) {
+        double margin = 0.0;
+        for (int treeId = 0; treeId < rootIds.length; treeId++) {
+            ByteBuffer chunk = chunks[treeChunkIds[treeId]];
+            int firstNodeId = chunkFirstNodeIds[treeChunkIds[treeId]];
+            int offset = (rootIds[treeId] - firstNodeId) * bytesPerNode;
+            int featureId = chunk.getInt(offset);
+            while (featureId >= 0) {
+                int childId = getChildId(chunk, offset, features[featureId]);
+                offset = (childId - firstNodeId) * bytesPerNode;
+                featureId = chunk.getInt(offset);
+            }
+            margin += chunk.getDouble(offset + 8);
+        }
+        return margin;
+    }
+
+    @Override
+    void addMargins(Data data, int beginRow, int endRow, int beginTree, int endTree, double[] margins) {
+        for (int treeId = beginTree; treeId < endTree; treeId++) {
+            ByteBuffer chunk = chunks[treeChunkIds[treeId]];
+            int firstNodeId = chunkFirstNodeIds[treeChunkIds[treeId]];
+            int rootOffset = (rootIds[treeId] - firstNodeId) * bytesPerNode;
+            for (int row = beginRow; row < endRow; row++) {
+                int offset = rootOffset;
+                int featureId = chunk.getInt(offset);
+                while (featureId >= 0) {
+                    int childId = getChildId(chunk, offset, data.getFeatureValue(featureId, row));
+                    offset = (childId - firstNodeId) * bytesPerNode;
+                    featureId = chunk.getInt(offset);
+                }
+                margins[row - beginRow] += chunk.getDouble(offset + 8);
+            }
+        }
+    }
+
+}
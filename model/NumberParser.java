@@ -0,0 +1,212 @@
+package model;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+// Parses numbers straight from bytes (without creating Strings), giving exactly the same results as
+// Integer.parseInt and Double.parseDouble. Anything unusual (NaN, hex, whitespace, errors, ...) is simply
+// handed over to those methods.
+class NumberParser {
+
+    private static final double[] powersOfTen = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    }; // all exactly representable as doubles
+
+    // 5^q to 128 bits (with the top bit set), for q from smallestPowerOfFive to largestPowerOfFive:
+    // the high 64 bits at index 2 * (q - smallestPowerOfFive), the low 64 bits just after
+    private static final int smallestPowerOfFive = -342;
+    private static final int largestPowerOfFive = 308;
+    private static final long[] powersOfFive = computePowersOfFive();
+
+    private NumberParser() {}
+
+    // as Integer.parseInt, for the bytes [begin, end)
+    static int parseInt(byte[] bytes, int begin, int end) {
+        int position = begin;
+        boolean negative = false;
+        if (position < end && (bytes[position] == '-' || bytes[position] == '+')) {
+            negative = (bytes[position] == '-');
+            position++;
+        }
+        if (position == end || end - position > 9) {
+            return Integer.parseInt(asString(bytes, begin, end));
+        }
+        int value = 0;
+        for (; position < end; position++) {
+            int digit = bytes[position] - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(asString(bytes, begin, end));
+            }
+            value = 10 * value + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    // As Double.parseDouble, for the bytes [begin, end): plain decimals (with an optional exponent) of up to
+    // 19 significant digits are handled here, everything else is passed on to Double.parseDouble.
+    static double parseDouble(byte[] bytes, int begin, int end) {
+        int position = begin;
+        boolean negative = false;
+        if (position < end && (bytes[position] == '-' || bytes[position] == '+')) {
+            negative = (bytes[position] == '-');
+            position++;
+        }
+
+        long mantissa = 0;
+        int numDigits = 0; // significant digits only (leading zeros don't count)
+        int exponent = 0;
+        boolean anyDigits = false;
+        boolean afterPoint = false;
+        for (; position < end; position++) {
+            byte current = bytes[position];
+            if (current >= '0' && current <= '9') {
+                anyDigits = true;
+                if (mantissa != 0 || current != '0') {
+                    if (numDigits == 19) {
+                        return Double.parseDouble(asString(bytes, begin, end));
+                    }
+                    mantissa = 10 * mantissa + (current - '0');
+                    numDigits++;
+                }
+                if (afterPoint) {
+                    exponent--;
+                }
+            } else if (current == '.' && !afterPoint) {
+                afterPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (!anyDigits) {
+            return Double.parseDouble(asString(bytes, begin, end));
+        }
+
+        if (position < end) {
+            byte current = bytes[position];
+            if (current != 'e' && current != 'E') {
+                return Double.parseDouble(asString(bytes, begin, end));
+            }
+            position++;
+            boolean negativeExponent = false;
+            if (position < end && (bytes[position] == '-' || bytes[position] == '+')) {
+                negativeExponent = (bytes[position] == '-');
+                position++;
+            }
+            if (position == end || end - position > 4) {
+                return Double.parseDouble(asString(bytes, begin, end));
+            }
+            int explicitExponent = 0;
+            for (; position < end; position++) {
+                int digit = bytes[position] - '0';
+                if (digit < 0 || digit > 9) {
+                    return Double.parseDouble(asString(bytes, begin, end));
+                }
+                explicitExponent = 10 * explicitExponent + digit;
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        double value;
+        if (mantissa == 0) {
+            value = 0.0;
+        } else if (numDigits <= 15 && exponent >= 0 && exponent < powersOfTen.length) {
+            // both factors are exact as doubles, so a single multiplication or division rounds correctly
+            value = mantissa * powersOfTen[exponent];
+        } else if (numDigits <= 15 && exponent < 0 && -exponent < powersOfTen.length) {
+            value = mantissa / powersOfTen[-exponent];
+        } else {
+            value = multiplyByPowerOfTen(mantissa, exponent);
+            if (Double.isNaN(value)) {
+                return Double.parseDouble(asString(bytes, begin, end));
+            }
+        }
+        return negative ? -value : value;
+    }
+
+    // The correctly rounded double nearest to mantissa * 10^exponent (for a non-zero mantissa),
+    // or NaN in the rare cases which this can't decide. This is the Eisel-Lemire algorithm:
+    // the mantissa times a 128-bit approximation of 5^exponent nearly always pins down the result.
+    private static double multiplyByPowerOfTen(long mantissa, int exponent) {
+        if (exponent < smallestPowerOfFive || exponent > largestPowerOfFive) {
+            return Double.NaN; // underflows to zero or overflows to infinity, or nearly so
+        }
+        int index = 2 * (exponent - smallestPowerOfFive);
+        int leadingZeros = Long.numberOfLeadingZeros(mantissa);
+        long normalised = mantissa << leadingZeros;
+
+        long high = Math.multiplyHigh(normalised, powersOfFive[index])
+                + ((normalised >> 63) & powersOfFive[index]) + ((powersOfFive[index] >> 63) & normalised); // unsigned
+        long low = normalised * powersOfFive[index];
+        if ((high & 0x1FF) == 0x1FF) {
+            // the truncation might matter, so bring in the next 64 bits of the power of five
+            long secondHigh = Math.multiplyHigh(normalised, powersOfFive[index + 1])
+                    + ((normalised >> 63) & powersOfFive[index + 1]) + ((powersOfFive[index + 1] >> 63) & normalised);
+            long newLow = low + secondHigh;
+            if (Long.compareUnsigned(newLow, low) < 0) {
+                high++;
+            }
+            low = newLow;
+            if ((high & 0x1FF) == 0x1FF && low == -1L) {
+                return Double.NaN;
+            }
+        }
+
+        int upperBit = (int) (high >>> 63);
+        int shift = upperBit + 9;
+        long bits = high >>> shift;
+        int binaryExponent = (((152170 + 65536) * exponent) >> 16) + 63 + upperBit - leadingZeros + 1023;
+        if (binaryExponent <= 0 || binaryExponent >= 2046) {
+            return Double.NaN; // subnormal or (nearly) infinite
+        }
+
+        // exactly halfway between two doubles: round to even (only possible for small exponents)
+        if (Long.compareUnsigned(low, 1) <= 0 && exponent >= -4 && exponent <= 23 && (bits & 3) == 1
+                && (bits << shift) == high) {
+            bits &= ~1L;
+        }
+        bits += (bits & 1); // otherwise round half up
+        bits >>>= 1;
+        if (bits >= (1L << 53)) {
+            bits = 1L << 52;
+            binaryExponent++;
+            if (binaryExponent >= 2047) {
+                return Double.NaN;
+            }
+        }
+        bits &= ~(1L << 52);
+        return Double.longBitsToDouble(bits | ((long) binaryExponent << 52));
+    }
+
+    // Powers of five at or above 2^127 are truncated to 128 bits; the reciprocals (for negative powers)
+    // are rounded up. Computed once, with BigInteger.
+    private static long[] computePowersOfFive() {
+        BigInteger twoTo128 = BigInteger.ONE.shiftLeft(128);
+        BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        long[] powers = new long[2 * (largestPowerOfFive - smallestPowerOfFive + 1)];
+        for (int q = smallestPowerOfFive; q <= largestPowerOfFive; q++) {
+            BigInteger value;
+            if (q >= 0) {
+                value = BigInteger.valueOf(5).pow(q);
+                int bitLength = value.bitLength();
+                value = (bitLength > 128) ? value.shiftRight(bitLength - 128) : value.shiftLeft(128 - bitLength);
+            } else {
+                BigInteger power = BigInteger.valueOf(5).pow(-q);
+                int shift = power.bitLength() + 127; // so that the quotient has 128 bits
+                value = BigInteger.ONE.shiftLeft(shift).divide(power).add(BigInteger.ONE);
+                while (value.compareTo(twoTo128) >= 0) {
+                    value = value.shiftRight(1);
+                }
+            }
+            int index = 2 * (q - smallestPowerOfFive);
+            powers[index] = value.shiftRight(64).longValue();
+            powers[index + 1] = value.and(mask).longValue();
+        }
+        return powers;
+    }
+
+    private static String asString(byte[] bytes, int begin, int end) {
+        return new String(bytes, begin, end - begin, StandardCharsets.UTF_8);
+    }
+
+}
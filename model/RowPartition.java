@@ -0,0 +1,270 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// Holds the rows of every node of the tree currently being grown, in place:
+// each node owns the segment [begin, end) of the row ids below, and splitting a node
+// just rearranges its segment so that the left child's rows come before the right child's.
+// With exact splits there is also one ordering per feature, holding the feature's entries (see Data.getEntryValues)
+// which have a value, whose segments are kept sorted by that feature (so that nodes never need to sort).
+// As these leave out the missing values, each node has its own segment of each ordering (see LeafNode).
+// With histogram splits, the row ids are enough.
+class RowPartition {
+
+    private int[][] presortedEntryIds; // owned by Data; copied at the start of every tree (null with histograms)
+    private int[][] entryRows; // the row of each feature's entries (null for a dense feature, whose entries are rows)
+    private int[][] orderings; // null with histograms
+    private int[] numSortedEntries; // the number of entries in each ordering, for the current tree
+    private int[] rowIds; // each segment in ascending order
+    private boolean[] goesLeft; // indexed by row
+    private int numRows; // taking part in the current tree (all of them, unless they're being sampled)
+    // reusable buffers, holding the rows going right while a segment is rearranged: each task takes one and gives it
+    // back, so there are only ever as many as the tasks run at once (and they go with the partition, at the end of
+    // the run - rather than staying with the pool's threads, which other runs may share)
+    private Deque<int[]> scratchBuffers = new ArrayDeque<>();
+
+    RowPartition(Data data, boolean presorted) {
+        int numRows = data.getNumRows();
+        if (presorted) {
+            presortedEntryIds = data.getSortedEntryIds();
+            int numFeatures = presortedEntryIds.length;
+            entryRows = new int[numFeatures][];
+            orderings = new int[numFeatures][];
+            numSortedEntries = new int[numFeatures];
+            for (int featureId = 0; featureId < numFeatures; featureId++) {
+                entryRows[featureId] = data.getEntryRows(featureId);
+                orderings[featureId] = new int[presortedEntryIds[featureId].length];
+            }
+        }
+        rowIds = new int[numRows];
+        goesLeft = new boolean[numRows];
+        this.numRows = numRows;
+    }
+
+    // puts every row (or, if the sampler is active, every sampled row) back into the root node,
+    // which is then the segment [0, getNumRows()) (and [0, getNumSortedEntries()[f]) of each ordering)
+    void reset(RowSampler sampler) {
+        boolean sampling = sampler.isActive();
+        if (presortedEntryIds != null) {
+            for (int featureId = 0; featureId < orderings.length; featureId++) {
+                if (sampling) {
+                    // the sampled rows stay in sorted order
+                    int[] ordering = orderings[featureId];
+                    int position = 0;
+                    for (int entryId : presortedEntryIds[featureId]) {
+                        if (sampler.isSampled(getRow(featureId, entryId))) {
+                            ordering[position++] = entryId;
+                        }
+                    }
+                    numSortedEntries[featureId] = position;
+                } else {
+                    System.arraycopy(presortedEntryIds[featureId], 0, orderings[featureId], 0, orderings[featureId].length);
+                    numSortedEntries[featureId] = orderings[featureId].length;
+                }
+            }
+        }
+        int position = 0;
+        for (int row = 0; row < goesLeft.length; row++) {
+            if (!sampling || sampler.isSampled(row)) {
+                rowIds[position++] = row;
+            }
+        }
+        numRows = position;
+    }
+
+    int getNumRows() {
+        return numRows;
+    }
+
+    // only available with exact splits
+    int[] getNumSortedEntries() {
+        return numSortedEntries.clone();
+    }
+
+    int[] getRowIds() {
+        return rowIds;
+    }
+
+    // only available with exact splits
+    int[] getSortedEntryIds(int featureId) {
+        return orderings[featureId];
+    }
+
+    private int getRow(int featureId, int entryId) {
+        return (entryRows[featureId] == null) ? entryId : entryRows[featureId][entryId];
+    }
+
+    // Marks each row in the segment [begin, end) as going left if its value is <= threshold, or else (if it's
+    // missing) as missingGoesLeft says. Only the entries are looked at: the node's segment [sortedBegin, sortedEnd)
+    // of the feature's ordering, which goes left up to the first value above threshold (and then has any missing
+    // entries, at the end - see Data.getSortedEntryIds). The node's other rows all have defaultValue.
+    // Returns where the right half of the segment will begin, once the segment is rearranged.
+    int markLeft(int begin, int end, int sortedBegin, int sortedEnd, int featureId, double threshold,
+            boolean missingGoesLeft, double[] entryValues, double defaultValue) {
+        boolean defaultGoesLeft = Double.isNaN(defaultValue) ? missingGoesLeft : defaultValue <= threshold;
+        for (int position = begin; position < end; position++) {
+            goesLeft[rowIds[position]] = defaultGoesLeft;
+        }
+        int numLeft = defaultGoesLeft ? (end - begin) - (sortedEnd - sortedBegin) : 0;
+        int[] ordering = orderings[featureId];
+        int position = sortedBegin;
+        for (; position < sortedEnd && entryValues[ordering[position]] <= threshold; position++) {
+            goesLeft[getRow(featureId, ordering[position])] = true;
+            numLeft++;
+        }
+        if (defaultGoesLeft || missingGoesLeft) {
+            for (; position < sortedEnd; position++) {
+                boolean left = missingGoesLeft && Double.isNaN(entryValues[ordering[position]]);
+                goesLeft[getRow(featureId, ordering[position])] = left;
+                if (left) {
+                    numLeft++;
+                }
+            }
+        }
+        return begin + numLeft;
+    }
+
+    // As above, but using the feature's bins: with histogram splits, value <= threshold exactly when
+    // the value's bin is at or below the bin whose upper edge is the threshold
+    // (for a sparse feature, only the rows with entries are visited - see FeatureBins.forEachEntry)
+    int markLeft(int begin, int end, FeatureBins bins, int featureId, int maxBinId, boolean missingGoesLeft) {
+        int missingBinId = bins.getMissingBinId(featureId);
+        if (bins.isSparse(featureId)) {
+            int defaultBinId = bins.getDefaultBinId(featureId);
+            boolean defaultGoesLeft = (defaultBinId <= maxBinId) || (missingGoesLeft && defaultBinId == missingBinId);
+            for (int position = begin; position < end; position++) {
+                goesLeft[rowIds[position]] = defaultGoesLeft;
+            }
+            bins.forEachEntry(featureId, rowIds, begin, end, (row, binId) -> {
+                goesLeft[row] = (binId <= maxBinId) || (missingGoesLeft && binId == missingBinId);
+            });
+        } else {
+            for (int position = begin; position < end; position++) {
+                int row = rowIds[position];
+                int binId = bins.getBinId(featureId, row);
+                goesLeft[row] = (binId <= maxBinId) || (missingGoesLeft && binId == missingBinId);
+            }
+        }
+        int numLeft = 0;
+        for (int position = begin; position < end; position++) {
+            if (goesLeft[rowIds[position]]) {
+                numLeft++;
+            }
+        }
+        return begin + numLeft;
+    }
+
+    // Rearranges the (already marked) rows of the node that split has just grown children for, so that the rows
+    // going left come first. Both halves keep their relative order (so stay sorted). With exact splits, each
+    // ordering's split point is written into the children's segments (see BranchNode.growChildren).
+    void rearrange(BranchNode split) {
+        int[] scratch = takeScratch();
+        rearrange(split.getLeftLeaf().getBegin(), split.getRightLeaf().getEnd(), scratch);
+        if (orderings != null) {
+            for (int featureId = 0; featureId < orderings.length; featureId++) {
+                rearrange(featureId, split, scratch);
+            }
+        }
+        giveBackScratch(scratch);
+    }
+
+    // As above, for many splits at once.
+    // The work is shared out by ordering with exact splits (there being one per feature), otherwise by split.
+    void rearrangeAll(List<BranchNode> splits, ExecutorService exec) {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        if (orderings != null) {
+            tasks.add(() -> {
+                int[] scratch = takeScratch();
+                for (BranchNode split : splits) {
+                    rearrange(split.getLeftLeaf().getBegin(), split.getRightLeaf().getEnd(), scratch);
+                }
+                giveBackScratch(scratch);
+                return null;
+            });
+            for (int featureId = 0; featureId < orderings.length; featureId++) {
+                int id = featureId;
+                tasks.add(() -> {
+                    int[] scratch = takeScratch();
+                    for (BranchNode split : splits) {
+                        rearrange(id, split, scratch);
+                    }
+                    giveBackScratch(scratch);
+                    return null;
+                });
+            }
+        } else {
+            for (BranchNode split : splits) {
+                tasks.add(() -> {
+                    int[] scratch = takeScratch();
+                    rearrange(split.getLeftLeaf().getBegin(), split.getRightLeaf().getEnd(), scratch);
+                    giveBackScratch(scratch);
+                    return null;
+                });
+            }
+        }
+        try {
+            for (Future<Void> outcome : exec.invokeAll(tasks)) {
+                outcome.get();
+            }
+        } catch (ExecutionException | InterruptedException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    // a buffer big enough for any segment (of the row ids, or of an ordering)
+    private int[] takeScratch() {
+        int[] scratch;
+        synchronized (scratchBuffers) {
+            scratch = scratchBuffers.pollFirst();
+        }
+        return (scratch != null) ? scratch : new int[goesLeft.length];
+    }
+
+    private void giveBackScratch(int[] scratch) {
+        synchronized (scratchBuffers) {
+            scratchBuffers.addFirst(scratch);
+        }
+    }
+
+    // stable partition of one segment of the row ids, using scratch to hold the rows going right
+    private void rearrange(int begin, int end, int[] scratch) {
+        int leftPosition = begin;
+        int numRight = 0;
+        for (int position = begin; position < end; position++) {
+            int row = rowIds[position];
+            if (goesLeft[row]) {
+                rowIds[leftPosition++] = row;
+            } else {
+                scratch[numRight++] = row;
+            }
+        }
+        System.arraycopy(scratch, 0, rowIds, leftPosition, numRight);
+    }
+
+    // likewise for the split node's segment of one ordering, recording where its right half begins
+    private void rearrange(int featureId, BranchNode split, int[] scratch) {
+        int[] ordering = orderings[featureId];
+        int begin = split.getLeftLeaf().getSortedBegins()[featureId];
+        int end = split.getRightLeaf().getSortedEnds()[featureId];
+        int leftPosition = begin;
+        int numRight = 0;
+        for (int position = begin; position < end; position++) {
+            int entryId = ordering[position];
+            if (goesLeft[getRow(featureId, entryId)]) {
+                ordering[leftPosition++] = entryId;
+            } else {
+                scratch[numRight++] = entryId;
+            }
+        }
+        System.arraycopy(scratch, 0, ordering, leftPosition, numRight);
+        split.getLeftLeaf().getSortedEnds()[featureId] = leftPosition; // the same array as the right's begins
+    }
+
+}
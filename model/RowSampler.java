@@ -0,0 +1,168 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// helper class - for row subsampling (see Config.setSubsample and Config.setGoss)
+// Picks the rows that each tree is grown on: nothing is copied, the chosen rows are just marked
+// (RowPartition.reset then puts only those into the root). The rows left out still get the tree's increment
+// once it's grown, so that every row's logit and derivatives stay up to date.
+class RowSampler {
+
+    private Random generator = new Random();
+    private Config config;
+    private boolean[] sampled; // indexed by row (null if every row is used)
+    private int numSampled;
+    private double[] scratch; // for GOSS: the rows' absolute first derivatives, partially sorted
+
+    RowSampler(Config config, int numRows) {
+        this.config = config;
+        if (config.getSubsample() < 1.0 || config.getGossTopRate() != null) {
+            sampled = new boolean[numRows];
+        }
+        numSampled = numRows;
+    }
+
+    // the random generator's state is kept in checkpoints (see Checkpointer)
+    Random getGenerator() {
+        return generator;
+    }
+
+    void setGenerator(Random generator) {
+        this.generator = generator;
+    }
+
+    boolean isActive() {
+        return sampled != null;
+    }
+
+    boolean isSampled(int row) {
+        return sampled == null || sampled[row];
+    }
+
+    int getNumSampled() {
+        return numSampled;
+    }
+
+    // Chooses the rows for the next tree (if sampling).
+    // With GOSS, the randomly kept rows have their derivatives scaled up (see Gradients.scale), so that they
+    // stand in for all the small-gradient rows; they go back to normal as soon as the tree's leaves are finalised.
+    void sample(Gradients gradients) {
+        if (sampled == null) {
+            return;
+        }
+        int numRows = sampled.length;
+        Arrays.fill(sampled, false);
+        if (config.getGossTopRate() == null) {
+            numSampled = chooseRandomly(config.getSubsample(), gradients, 1.0);
+            if (numSampled == 0) {
+                sampled[generator.nextInt(numRows)] = true; // a tree needs at least one row
+                numSampled = 1;
+            }
+            return;
+        }
+
+        // the rows with the largest absolute first derivatives are always kept
+        int numTop = (int) Math.round(config.getGossTopRate() * numRows);
+        if (numTop > 0) {
+            if (scratch == null) {
+                scratch = new double[numRows];
+            }
+            for (int row = 0; row < numRows; row++) {
+                scratch[row] = Math.abs(gradients.getFirstDeriv(row));
+            }
+            double cutoff = select(scratch, numRows - numTop);
+            int numTopLeft = numTop;
+            for (int row = 0; row < numRows; row++) {
+                if (Math.abs(gradients.getFirstDeriv(row)) > cutoff) {
+                    sampled[row] = true;
+                    numTopLeft--;
+                }
+            }
+            // any rows tied at the cutoff make up the numbers, in row order
+            for (int row = 0; row < numRows && numTopLeft > 0; row++) {
+                if (Math.abs(gradients.getFirstDeriv(row)) == cutoff) {
+                    sampled[row] = true;
+                    numTopLeft--;
+                }
+            }
+        }
+
+        // then a random selection of the rest (about otherRate * numRows of them), each standing in for
+        // 1 / probability rows
+        double probability = Math.min(config.getGossOtherRate() * numRows / Math.max(numRows - numTop, 1), 1.0);
+        numSampled = numTop + chooseRandomly(probability, gradients, 1.0 / probability);
+    }
+
+    // Marks each row not yet marked with the given probability, and scales the derivatives of those marked by
+    // factor. Returns how many were marked. Rather than a random number for every row, the gaps between the
+    // marked rows are drawn directly (from the geometric distribution), so this is quick for small fractions.
+    private int chooseRandomly(double probability, Gradients gradients, double factor) {
+        int numChosen = 0;
+        double logNotChosen = Math.log1p(-probability); // -infinity if the probability is 1
+        long row = -1;
+        while (true) {
+            row += 1 + (long) (Math.log(1.0 - generator.nextDouble()) / logNotChosen); // the next row chosen
+            if (row >= sampled.length) {
+                break;
+            }
+            if (!sampled[(int) row]) {
+                sampled[(int) row] = true;
+                if (factor != 1.0) {
+                    gradients.scale((int) row, factor);
+                }
+                numChosen++;
+            }
+        }
+        return numChosen;
+    }
+
+    // the k-th smallest value (counting from 0), partially sorting values as it goes (quickselect)
+    private static double select(double[] values, int k) {
+        int low = 0;
+        int high = values.length - 1;
+        while (low < high) {
+            double pivot = values[(low + high) >>> 1];
+            int left = low;
+            int right = high;
+            while (left <= right) {
+                while (values[left] < pivot) {
+                    left++;
+                }
+                while (values[right] > pivot) {
+                    right--;
+                }
+                if (left <= right) {
+                    double swap = values[left];
+                    values[left] = values[right];
+                    values[right] = swap;
+                    left++;
+                    right--;
+                }
+            }
+            if (k <= right) {
+                high = right;
+            } else if (k >= left) {
+                low = left;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+
+    // Gives the rows left out of the tree (just grown, with its leaves finalised) the increment of the leaf
+    // they would have fallen into.
+    void incrementUnsampled(AbstractNode tree, TrainingContext context) {
+        if (sampled == null) {
+            return;
+        }
+        Gradients gradients = context.getGradients();
+        TrainingContext.parallelFor(context.getExec(), sampled.length, row -> {
+            if (!sampled[row]) {
+                gradients.incrementLogit(row, tree.findLeaf(context, row).getDeltaLogit());
+            }
+        });
+    }
+
+}
@@ -0,0 +1,47 @@
+package model;
+
+// One line of the leaderboard returned by ConfigSearch.run
+public class SearchResult {
+
+    private Config config;
+    private GBTModel model;
+    private Evaluation evaluation; // on the validation data
+    private boolean pruned; // stopped early for falling behind the other runs
+    private long trainMillis;
+
+    SearchResult(Config config, GBTModel model, Evaluation evaluation, boolean pruned, long trainMillis) {
+        this.config = config;
+        this.model = model;
+        this.evaluation = evaluation;
+        this.pruned = pruned;
+        this.trainMillis = trainMillis;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public GBTModel getModel() {
+        return model;
+    }
+
+    public Evaluation getEvaluation() {
+        return evaluation;
+    }
+
+    public boolean isPruned() {
+        return pruned;
+    }
+
+    public long getTrainMillis() {
+        return trainMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Log-loss: %.4f, ROC-AUC: %.4f, PR-AUC: %.4f, Trees: %d%s, Time: %d millis | %s",
+                evaluation.getLogLoss(), evaluation.getRocAuc(), evaluation.getPrAuc(), model.getNumTrees(),
+                pruned ? " (pruned)" : "", trainMillis, config);
+    }
+
+}
@@ -0,0 +1,103 @@
+package model;
+
+import java.util.Arrays;
+
+// A feature column which only holds the rows whose value differs from the column's default value: every other row
+// has the default. The default is either missing (NaN), for features which are mostly empty, or a number (e.g. 0.0),
+// for features which mostly have that value - and then any missing values are held as entries of their own.
+// The entries are in ascending order of row: entry i is row rows[i], with value values[i].
+// (See Data.loadSparse: used for the features which are mostly the default.)
+class SparseColumn {
+
+    private int[] rows;
+    private double[] values; // never the default (but may be NaN if the default isn't)
+    private double defaultValue;
+
+    SparseColumn(int[] rows, double[] values, double defaultValue) {
+        this.rows = rows;
+        this.values = values;
+        this.defaultValue = defaultValue;
+    }
+
+    int[] getRows() {
+        return rows;
+    }
+
+    double[] getValues() {
+        return values;
+    }
+
+    double getDefaultValue() {
+        return defaultValue;
+    }
+
+    int getNumEntries() {
+        return rows.length;
+    }
+
+    // binary search for the row's entry (the default if it has none)
+    double getValue(int row) {
+        int entryId = Arrays.binarySearch(rows, row);
+        return (entryId >= 0) ? values[entryId] : defaultValue;
+    }
+
+    // the same values, with a slot for every row
+    double[] toDense(int numRows) {
+        double[] column = new double[numRows];
+        Arrays.fill(column, defaultValue);
+        for (int entryId = 0; entryId < rows.length; entryId++) {
+            column[rows[entryId]] = values[entryId];
+        }
+        return column;
+    }
+
+    // the entries of several chunks of rows (in ascending order of row, as are the entries within each chunk)
+    static SparseColumn concatenate(Builder[] chunks, double defaultValue) {
+        int numEntries = 0;
+        for (Builder chunk : chunks) {
+            numEntries += chunk.numEntries;
+        }
+        int[] rows = new int[numEntries];
+        double[] values = new double[numEntries];
+        int position = 0;
+        for (Builder chunk : chunks) {
+            System.arraycopy(chunk.rows, 0, rows, position, chunk.numEntries);
+            System.arraycopy(chunk.values, 0, values, position, chunk.numEntries);
+            position += chunk.numEntries;
+        }
+        return new SparseColumn(rows, values, defaultValue);
+    }
+
+    // collects the entries of one column as a chunk of a file is parsed (see CsvReader.readAllSparse)
+    static class Builder {
+
+        private double defaultValue;
+        private int[] rows = new int[16];
+        private double[] values = new double[16];
+        private int numEntries = 0;
+
+        Builder(double defaultValue) {
+            this.defaultValue = defaultValue;
+        }
+
+        // rows must be added in ascending order (a value equal to the default is skipped)
+        void add(int row, double value) {
+            if (isDefault(value, defaultValue)) {
+                return;
+            }
+            if (numEntries == rows.length) {
+                rows = Arrays.copyOf(rows, 2 * numEntries);
+                values = Arrays.copyOf(values, 2 * numEntries);
+            }
+            rows[numEntries] = row;
+            values[numEntries] = value;
+            numEntries++;
+        }
+    }
+
+    // (NaN being a default like any other)
+    static boolean isDefault(double value, double defaultValue) {
+        return Double.isNaN(defaultValue) ? Double.isNaN(value) : value == defaultValue;
+    }
+
+}
@@ -1,126 +1,276 @@
 package model;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
 import java.util.concurrent.Callable;
 
+// Only the node's rows with a value for the feature are scanned (for a sparse feature, these are just its entries):
+// the sums over the rows missing it are the node's sums less theirs. Each split point is then tried with the
+// missing values on either side, and the better side is learned as the split's default direction.
+// For a sparse feature with a numeric default (see SparseColumn), the node's rows with no entry all have that value:
+// they're scanned as a single item, in its place among the values, with the node's sums less those of the entries
+// (its missing values then being entries of their own, at the end of its segment - see Data.getSortedEntryIds).
 class Split implements Callable<BranchNode> {
 
     private Config config;
     private int featureId;
-    private List<FeatureVector> datapoints; // this is a reference to a list shared by many threads
+    private Gradients gradients;
+    private double[] entryValues; // see Data.getEntryValues
+    private int[] entryRows; // null if the entries are the rows themselves
+    private double defaultValue; // of the rows with no entry (NaN if they're missing - see Data.getDefaultValue)
+    private int[] sortedEntryIds; // shared by many threads (read only); sorted by value within each node
+    private int begin; // the node's entries are the segment [begin, end) of sortedEntryIds
+    private int end;
     private int depth;
+    private GradientSums nodeSums; // over all of the node's rows
+    private int defaultItem = -1; // the position of the default rows among the items scanned (-1 if none)
 
-    Split(Config config, int featureId, List<FeatureVector> datapoints, int depth) {
-        this.config = config;
+    Split(TrainingContext context, int featureId, int begin, int end, int depth, GradientSums nodeSums) {
+        this.config = context.getConfig();
         this.featureId = featureId;
-        this.datapoints = datapoints;
+        this.gradients = context.getGradients();
+        this.entryValues = context.getData().getEntryValues(featureId);
+        this.entryRows = context.getData().getEntryRows(featureId);
+        this.defaultValue = context.getData().getDefaultValue(featureId);
+        this.sortedEntryIds = context.getPartition().getSortedEntryIds(featureId);
+        this.begin = begin;
+        this.end = end;
         this.depth = depth;
+        this.nodeSums = nodeSums;
     }
 
     // given the config, the features and the datapoints in the leafnode, returns the best split point
+    // (the returned BranchNode has no children yet - these are only created for the winning split)
     @Override
     public BranchNode call() {
 
-        datapoints = new ArrayList<>(datapoints); // make shallow copy,
-        // because (i) we are accessing datapoints from multiple threads
-        // ... and (ii) because datapoints might be a view of a sublist
-        // doing this inside the thread
-
-        int totalSamples = datapoints.size();
+        int totalSamples = nodeSums.getNumRows();
 
         // already checked in LeafNode class, but just in case...
         if (totalSamples < 2 * config.getMinSamplesLeaf()) {
             return null;
         }
 
-        // sort the samples in the leaf by the value of the chosen feature
-        datapoints.sort(Comparator.comparing(vector -> vector.getFeatureValue(featureId)));
+        int numPresent = end - begin;
+        while (numPresent > 0 && Double.isNaN(entryValues[sortedEntryIds[begin + numPresent - 1]])) {
+            numPresent--; // missing entries
+        }
+        int numWithoutEntries = totalSamples - (end - begin);
+        int numDefaults = Double.isNaN(defaultValue) ? 0 : numWithoutEntries;
+        int numMissing = totalSamples - numPresent - numDefaults;
+        int numValues = numPresent + numDefaults; // the rows not missing
 
-        // initially, everything except the first minSamplesLeaf datapoints are sent to
-        // the right
+        // The items scanned are the present values, with the default rows (if any) as one more among them.
+        // NB no need to sort: the samples in the leaf are already in order of the chosen feature
+        // The split points lie between two items; without default rows, the left gets between firstItem and
+        // lastItem of them (the most that either side of the split could need, once the missing values are added)
+        int numItems = numPresent;
+        int firstItem = Math.max(1, config.getMinSamplesLeaf() - numMissing);
+        int lastItem = Math.min(numPresent - 1, numPresent + numMissing - config.getMinSamplesLeaf());
+        if (numDefaults > 0) {
+            defaultItem = countBelow(defaultValue, numPresent);
+            numItems++;
+            firstItem = 1;
+            lastItem = numItems - 1;
+        }
+
+        // initially, everything except the first firstItem items are sent to the right
         double sumLeftFirstDerivs = 0.0;
         double sumLeftSecondDerivs = 0.0;
         double sumRightFirstDerivs = 0.0;
         double sumRightSecondDerivs = 0.0;
 
-        for (int position = 0; position < totalSamples; position++) {
-            if (position < config.getMinSamplesLeaf()) {
-                sumLeftFirstDerivs += datapoints.get(position).getFirstDeriv(); // don't use .stream() - too slow
-                sumLeftSecondDerivs += datapoints.get(position).getSecondDeriv();
+        for (int position = 0; position < numPresent; position++) {
+            int row = getRow(sortedEntryIds[begin + position]);
+            if (toItem(position) < firstItem) {
+                sumLeftFirstDerivs += gradients.getFirstDeriv(row); // don't use .stream() - too slow
+                sumLeftSecondDerivs += gradients.getSecondDeriv(row);
+            } else {
+                sumRightFirstDerivs += gradients.getFirstDeriv(row);
+                sumRightSecondDerivs += gradients.getSecondDeriv(row);
+            }
+        }
+
+        double sumMissingFirstDerivs = 0.0;
+        double sumMissingSecondDerivs = 0.0;
+        double sumDefaultFirstDerivs = 0.0;
+        double sumDefaultSecondDerivs = 0.0;
+        if (numDefaults > 0) {
+            for (int position = numPresent; position < end - begin; position++) {
+                int row = getRow(sortedEntryIds[begin + position]);
+                sumMissingFirstDerivs += gradients.getFirstDeriv(row);
+                sumMissingSecondDerivs += gradients.getSecondDeriv(row);
+            }
+            sumDefaultFirstDerivs = nodeSums.getFirstDeriv() - sumLeftFirstDerivs - sumRightFirstDerivs
+                    - sumMissingFirstDerivs;
+            sumDefaultSecondDerivs = nodeSums.getSecondDeriv() - sumLeftSecondDerivs - sumRightSecondDerivs
+                    - sumMissingSecondDerivs;
+            if (defaultItem < firstItem) {
+                sumLeftFirstDerivs += sumDefaultFirstDerivs;
+                sumLeftSecondDerivs += sumDefaultSecondDerivs;
             } else {
-                sumRightFirstDerivs += datapoints.get(position).getFirstDeriv();
-                sumRightSecondDerivs += datapoints.get(position).getSecondDeriv();
+                sumRightFirstDerivs += sumDefaultFirstDerivs;
+                sumRightSecondDerivs += sumDefaultSecondDerivs;
             }
         }
 
-        int currentPosition = config.getMinSamplesLeaf();
-        // NB currentPosition will always be equal to the number of samples sent to the
-        // LEFT.
-        // it will also be the index of the datapoint to the right of the split.
+        double sumPresentFirstDerivs = sumLeftFirstDerivs + sumRightFirstDerivs;
+        double sumPresentSecondDerivs = sumLeftSecondDerivs + sumRightSecondDerivs;
+        if (numDefaults == 0 && numMissing > 0) {
+            sumMissingFirstDerivs = nodeSums.getFirstDeriv() - sumPresentFirstDerivs;
+            sumMissingSecondDerivs = nodeSums.getSecondDeriv() - sumPresentSecondDerivs;
+        }
 
-        double sumAllFirstDerivs = sumLeftFirstDerivs + sumRightFirstDerivs;
-        double sumAllSecondDerivs = sumLeftSecondDerivs + sumRightSecondDerivs;
+        int currentItem = firstItem;
+        // NB currentItem will always be equal to the number of items sent to the LEFT
+        // (and countLeft to the number of samples with values sent to the LEFT).
+        // it will also be the index of the item to the right of the split.
+        int countLeft = (numDefaults == 0) ? firstItem : getItemCount(0, numDefaults);
 
-        double entropyDecreaseWithoutSplit = -0.5 * sumAllFirstDerivs * sumAllFirstDerivs
-                / (sumAllSecondDerivs + config.getL2reg());
+        double sumAllFirstDerivs = sumPresentFirstDerivs + sumMissingFirstDerivs;
+        double sumAllSecondDerivs = sumPresentSecondDerivs + sumMissingSecondDerivs;
+
+        double entropyDecreaseWithoutSplit = entropyDecrease(sumAllFirstDerivs, sumAllSecondDerivs);
         double bestEntropyDecrease = entropyDecreaseWithoutSplit - config.getMinGainSplit();
         // this is the benchmark to beat
         Double bestSplitThreshold = null;
-        Integer bestSplitPosition = null;
+        boolean bestMissingGoesLeft = false;
+        GradientSums bestLeftSums = null;
+        GradientSums bestRightSums = null;
 
-        while (true) {
+        while (currentItem <= lastItem) {
 
-            double valueToLeft = datapoints.get(currentPosition - 1).getFeatureValue(featureId);
-            double valueToRight = datapoints.get(currentPosition).getFeatureValue(featureId);
+            double valueToLeft = getItemValue(currentItem - 1);
+            double valueToRight = getItemValue(currentItem);
 
             if (valueToLeft < valueToRight) {
-                // Calculate metric gain if splitting here
-                double leftEntropyDecrease = -0.5 * sumLeftFirstDerivs * sumLeftFirstDerivs
-                        / (sumLeftSecondDerivs + config.getL2reg());
-                double rightEntropyDecrease = -0.5 * sumRightFirstDerivs * sumRightFirstDerivs
-                        / (sumRightSecondDerivs + config.getL2reg());
-                double entropyDecrease = leftEntropyDecrease + rightEntropyDecrease;
-
-                if (entropyDecrease < bestEntropyDecrease) {
-                    bestEntropyDecrease = entropyDecrease;
-                    bestSplitThreshold = (valueToLeft + valueToRight) / 2.0;
-                    bestSplitPosition = currentPosition;
+                int countRight = numValues - countLeft;
+
+                // Calculate metric gain if splitting here, with the missing values sent right...
+                if (countLeft >= config.getMinSamplesLeaf() && countRight + numMissing >= config.getMinSamplesLeaf()) {
+                    double sumWithMissingFirstDerivs = sumRightFirstDerivs + sumMissingFirstDerivs;
+                    double sumWithMissingSecondDerivs = sumRightSecondDerivs + sumMissingSecondDerivs;
+                    double splitEntropyDecrease = entropyDecrease(sumLeftFirstDerivs, sumLeftSecondDerivs)
+                            + entropyDecrease(sumWithMissingFirstDerivs, sumWithMissingSecondDerivs);
+
+                    if (splitEntropyDecrease < bestEntropyDecrease) {
+                        bestEntropyDecrease = splitEntropyDecrease;
+                        bestSplitThreshold = (valueToLeft + valueToRight) / 2.0;
+                        bestMissingGoesLeft = false;
+                        bestLeftSums = new GradientSums(sumLeftFirstDerivs, sumLeftSecondDerivs, countLeft);
+                        bestRightSums = new GradientSums(sumWithMissingFirstDerivs, sumWithMissingSecondDerivs,
+                                countRight + numMissing);
+                    }
+                }
+
+                // ... or left
+                if (numMissing > 0 && countLeft + numMissing >= config.getMinSamplesLeaf()
+                        && countRight >= config.getMinSamplesLeaf()) {
+                    double sumWithMissingFirstDerivs = sumLeftFirstDerivs + sumMissingFirstDerivs;
+                    double sumWithMissingSecondDerivs = sumLeftSecondDerivs + sumMissingSecondDerivs;
+                    double splitEntropyDecrease = entropyDecrease(sumWithMissingFirstDerivs, sumWithMissingSecondDerivs)
+                            + entropyDecrease(sumRightFirstDerivs, sumRightSecondDerivs);
+
+                    if (splitEntropyDecrease < bestEntropyDecrease) {
+                        bestEntropyDecrease = splitEntropyDecrease;
+                        bestSplitThreshold = (valueToLeft + valueToRight) / 2.0;
+                        bestMissingGoesLeft = true;
+                        bestLeftSums = new GradientSums(sumWithMissingFirstDerivs, sumWithMissingSecondDerivs,
+                                countLeft + numMissing);
+                        bestRightSums = new GradientSums(sumRightFirstDerivs, sumRightSecondDerivs, countRight);
+                    }
                 }
             }
 
             // now transfer datapoints across
-            if (currentPosition < totalSamples - config.getMinSamplesLeaf()) {
-                double currentFirstDeriv = datapoints.get(currentPosition).getFirstDeriv();
-                double currentSecondDeriv = datapoints.get(currentPosition).getSecondDeriv();
+            if (currentItem < lastItem) {
+                double currentFirstDeriv;
+                double currentSecondDeriv;
+                if (currentItem == defaultItem) {
+                    currentFirstDeriv = sumDefaultFirstDerivs;
+                    currentSecondDeriv = sumDefaultSecondDerivs;
+                } else {
+                    int currentRow = getRow(sortedEntryIds[begin + toPosition(currentItem)]);
+                    currentFirstDeriv = gradients.getFirstDeriv(currentRow);
+                    currentSecondDeriv = gradients.getSecondDeriv(currentRow);
+                }
 
                 sumLeftFirstDerivs += currentFirstDeriv;
                 sumRightFirstDerivs -= currentFirstDeriv;
                 sumLeftSecondDerivs += currentSecondDeriv;
                 sumRightSecondDerivs -= currentSecondDeriv;
 
-                currentPosition++;
+                countLeft += getItemCount(currentItem, numDefaults);
+                currentItem++;
 
             } else {
                 break;
             }
         }
 
-        if (bestSplitPosition != null) {
+        // finally, every value to the left and the missing values to the right
+        if (numMissing >= config.getMinSamplesLeaf() && numValues >= config.getMinSamplesLeaf()) {
+            double splitEntropyDecrease = entropyDecrease(sumPresentFirstDerivs, sumPresentSecondDerivs)
+                    + entropyDecrease(sumMissingFirstDerivs, sumMissingSecondDerivs);
+            if (splitEntropyDecrease < bestEntropyDecrease) {
+                bestEntropyDecrease = splitEntropyDecrease;
+                bestSplitThreshold = Double.POSITIVE_INFINITY;
+                bestMissingGoesLeft = false;
+                bestLeftSums = new GradientSums(sumPresentFirstDerivs, sumPresentSecondDerivs, numValues);
+                bestRightSums = new GradientSums(sumMissingFirstDerivs, sumMissingSecondDerivs, numMissing);
+            }
+        }
 
-            List<FeatureVector> leftDatapoints = datapoints.subList(0, bestSplitPosition);
-            // these are views - no actual copying has happened
-            List<FeatureVector> rightDatapoints = datapoints.subList(bestSplitPosition, totalSamples);
+        if (bestSplitThreshold != null) {
 
             double metricGainFromSplit = bestEntropyDecrease - entropyDecreaseWithoutSplit;
             // subtract what would have been gained without splitting
 
-            return new BranchNode(depth, bestSplitThreshold, featureId, metricGainFromSplit,
-                    leftDatapoints, rightDatapoints);
+            return new BranchNode(depth, bestSplitThreshold, featureId, bestMissingGoesLeft, metricGainFromSplit,
+                    bestLeftSums, bestRightSums);
         } else {
             return null; // return null if no split found
         }
     }
 
+    // between the node's items (the present values, and the default rows at defaultItem) and its positions
+    // in sortedEntryIds (from begin)
+
+    private int toItem(int position) {
+        return (defaultItem >= 0 && position >= defaultItem) ? position + 1 : position;
+    }
+
+    private int toPosition(int item) {
+        return (defaultItem >= 0 && item > defaultItem) ? item - 1 : item;
+    }
+
+    private double getItemValue(int item) {
+        return (item == defaultItem) ? defaultValue : entryValues[sortedEntryIds[begin + toPosition(item)]];
+    }
+
+    private int getItemCount(int item, int numDefaults) {
+        return (item == defaultItem) ? numDefaults : 1;
+    }
+
+    // the number of the node's present values below value (binary search)
+    private int countBelow(double value, int numPresent) {
+        int low = 0;
+        int high = numPresent;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entryValues[sortedEntryIds[begin + middle]] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int getRow(int entryId) {
+        return (entryRows == null) ? entryId : entryRows[entryId];
+    }
+
+    private double entropyDecrease(double sumFirstDerivs, double sumSecondDerivs) {
+        return -0.5 * sumFirstDerivs * sumFirstDerivs / (sumSecondDerivs + config.getL2reg());
+    }
+
 }
@@ -0,0 +1,70 @@
+package model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+// Everything that the nodes need while a tree is being grown.
+// One of these is shared by all the trees built during a single call to train.
+class TrainingContext {
+
+    private Config config;
+    private Data data;
+    private Gradients gradients;
+    private RowPartition partition;
+    private FeatureSelector selector;
+    private FeatureBins bins; // null unless using histogram splits
+    private HistogramCache cache;
+    private ForkJoinPool exec; // the run's pool (maybe shared with other runs - see ConfigSearch)
+
+    TrainingContext(Config config, Data data, Gradients gradients, RowPartition partition,
+            FeatureSelector selector, FeatureBins bins, HistogramCache cache, ForkJoinPool exec) {
+        this.config = config;
+        this.data = data;
+        this.gradients = gradients;
+        this.partition = partition;
+        this.selector = selector;
+        this.bins = bins;
+        this.cache = cache;
+        this.exec = exec;
+    }
+
+    Config getConfig() {
+        return config;
+    }
+
+    Data getData() {
+        return data;
+    }
+
+    Gradients getGradients() {
+        return gradients;
+    }
+
+    RowPartition getPartition() {
+        return partition;
+    }
+
+    FeatureSelector getSelector() {
+        return selector;
+    }
+
+    FeatureBins getBins() {
+        return bins;
+    }
+
+    HistogramCache getCache() {
+        return cache;
+    }
+
+    ForkJoinPool getExec() {
+        return exec;
+    }
+
+    // Calls action for each of [0, count), spread over the threads of pool. A parallel stream started from one of a
+    // ForkJoinPool's tasks runs in that pool rather than the common pool, so every loop of a run keeps to its pool.
+    static void parallelFor(ForkJoinPool pool, int count, IntConsumer action) {
+        pool.submit(() -> IntStream.range(0, count).parallel().forEach(action)).join();
+    }
+
+}
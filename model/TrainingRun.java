@@ -0,0 +1,40 @@
+package model;
+
+// What one run of the boosting loop (see GBTModel.boost) leaves behind: the model, and the logits it gives the
+// training and validation data. The logits belong to the run rather than to the data, so the data can be shared.
+class TrainingRun {
+
+    // told the validation log-loss after each tree; returning false stops the run there (see ConfigSearch)
+    interface Monitor {
+        boolean keepGoing(int numTrees, double validationLoss);
+    }
+
+    private GBTModel model;
+    private double[] logits;
+    private double[] validationLogits; // null without validation
+    private boolean stopped; // by the monitor
+
+    TrainingRun(GBTModel model, double[] logits, double[] validationLogits, boolean stopped) {
+        this.model = model;
+        this.logits = logits;
+        this.validationLogits = validationLogits;
+        this.stopped = stopped;
+    }
+
+    GBTModel getModel() {
+        return model;
+    }
+
+    double[] getLogits() {
+        return logits;
+    }
+
+    double[] getValidationLogits() {
+        return validationLogits;
+    }
+
+    boolean wasStopped() {
+        return stopped;
+    }
+
+}
@@ -0,0 +1,34 @@
+package model;
+
+// Runs every test class (each has a main of its own too, for running alone). There's no build tool, so e.g.
+//   javac -d out Portal.java model/*.java test/model/*.java && java -cp out model.AllTests
+// A failing check throws AssertionError, and the run stops there.
+public class AllTests {
+
+    public static void main(String[] args) throws Exception {
+        HistogramTest.main(args);
+        HistogramSubtractionTest.main(args);
+        DataTest.main(args);
+        GradientsTest.main(args);
+        PresortTest.main(args);
+        GrowthTest.main(args);
+        PredictTest.main(args);
+        ModelFileTest.main(args);
+        CsvTest.main(args);
+        DataFileTest.main(args);
+        BinnedTest.main(args);
+        ScoreFileTest.main(args);
+        CsvWriterTest.main(args);
+        EvaluationTest.main(args);
+        EarlyStoppingTest.main(args);
+        SamplingTest.main(args);
+        SparseTest.main(args);
+        MarginsTest.main(args);
+        StagedTest.main(args);
+        ContinueTrainingTest.main(args);
+        CheckpointTest.main(args);
+        ConfigSearchTest.main(args);
+        System.out.println("All tests passed.");
+    }
+
+}
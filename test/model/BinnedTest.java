@@ -0,0 +1,43 @@
+package model;
+
+import java.nio.file.Path;
+
+// Training from bins alone (Data.loadBinned), without the feature values in memory
+class BinnedTest {
+
+    public static void main(String[] args) throws Exception {
+        binnedTrainingGrowsTheSameTrees();
+        binnedDataOnlyTrainsWithItsBins();
+        System.out.println("BinnedTest passed");
+    }
+
+    // a file this small fits in the sample, so the bins are just those of load
+    static void binnedTrainingGrowsTheSameTrees() throws Exception {
+        Path train = TestData.writeCsv(2000, 5, 18);
+        Path test = TestData.writeCsv(500, 5, 19);
+        Config config = Config.builder().setNumTrees(10).setMaxTreeDepth(4).setMinSamplesLeaf(20)
+                .setLearningRate(0.3).setL2reg(0.1).setNumBins(32).build();
+
+        Data inMemoryTest = Data.load(test.toString(), "Label");
+        GBTModel.train(config, Data.load(train.toString(), "Label")).predict(inMemoryTest);
+        Data binnedTest = Data.load(test.toString(), "Label");
+        GBTModel.train(config, Data.loadBinned(train.toString(), "Label", 32)).predict(binnedTest);
+        Check.sameValues(TestData.logits(inMemoryTest), TestData.logits(binnedTest), "logits");
+    }
+
+    static void binnedDataOnlyTrainsWithItsBins() throws Exception {
+        Path file = TestData.writeCsv(200, 3, 20);
+        Data binned = Data.loadBinned(file.toString(), "Label", 16);
+        Config exact = Config.builder().setNumTrees(2).build();
+        Check.raises(IllegalArgumentException.class, () -> GBTModel.train(exact, binned), "exact splits");
+        Config otherBins = Config.builder().setNumTrees(2).setNumBins(32).build();
+        Check.raises(IllegalArgumentException.class, () -> GBTModel.train(otherBins, binned), "other bins");
+
+        GBTModel model = GBTModel.train(Config.builder().setNumTrees(2).setNumBins(16).build(), binned);
+        Check.raises(IllegalStateException.class, () -> model.predict(binned), "predicting");
+        Check.raises(IllegalStateException.class, () -> binned.save(TestData.tempFile(".csv").toString()), "saving");
+        Check.raises(IllegalArgumentException.class, () -> Data.loadBinned(file.toString(), "Label", 256),
+                "256 bins");
+    }
+
+}
@@ -0,0 +1,72 @@
+package model;
+
+import java.util.Arrays;
+
+// The checks made by the tests (see AllTests): each throws AssertionError, naming what failed, if it doesn't hold.
+final class Check {
+
+    interface Action {
+        void run() throws Exception;
+    }
+
+    private Check() {}
+
+    static void isTrue(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    static void equal(Object expected, Object actual, String what) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError(what + ": expected " + expected + ", got " + actual);
+        }
+    }
+
+    static void near(double expected, double actual, double tolerance, String what) {
+        if (!(Math.abs(expected - actual) <= tolerance)) {
+            throw new AssertionError(what + ": expected " + expected + " (within " + tolerance + "), got " + actual);
+        }
+    }
+
+    // bit for bit (so NaN matches NaN)
+    static void sameValues(double[] expected, double[] actual, String what) {
+        if (expected.length != actual.length) {
+            throw new AssertionError(what + ": expected " + expected.length + " values, got " + actual.length);
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (Double.doubleToLongBits(expected[i]) != Double.doubleToLongBits(actual[i])) {
+                throw new AssertionError(what + ": at " + i + " expected " + expected[i] + ", got " + actual[i]);
+            }
+        }
+    }
+
+    static void nearValues(double[] expected, double[] actual, double tolerance, String what) {
+        if (expected.length != actual.length) {
+            throw new AssertionError(what + ": expected " + expected.length + " values, got " + actual.length);
+        }
+        for (int i = 0; i < expected.length; i++) {
+            near(expected[i], actual[i], tolerance, what + " at " + i);
+        }
+    }
+
+    static void sameBytes(byte[] expected, byte[] actual, String what) {
+        if (!Arrays.equals(expected, actual)) {
+            throw new AssertionError(what + ": contents differ");
+        }
+    }
+
+    // returns what was thrown, for any further checks
+    static <T extends Throwable> T raises(Class<T> type, Action action, String what) {
+        try {
+            action.run();
+        } catch (Throwable thrown) {
+            if (type.isInstance(thrown)) {
+                return type.cast(thrown);
+            }
+            throw new AssertionError(what + ": expected " + type.getSimpleName() + ", got " + thrown, thrown);
+        }
+        throw new AssertionError(what + ": expected " + type.getSimpleName() + ", but nothing was thrown");
+    }
+
+}
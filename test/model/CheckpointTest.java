@@ -0,0 +1,72 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Checkpoints written while training, and resuming from them
+class CheckpointTest {
+
+    public static void main(String[] args) throws Exception {
+        resumedRunEqualsUninterrupted();
+        finishedRunIsJustScored();
+        badCheckpointsAreRejected();
+        System.out.println("CheckpointTest passed");
+    }
+
+    static void resumedRunEqualsUninterrupted() throws Exception {
+        Path file = TestData.writeCsv(1500, 4, 27);
+        Path checkpoint = TestData.tempFile(".gbt");
+        Data test = Data.load(file.toString(), "Label");
+        GBTModel whole = GBTModel.train(config(40, null), Data.load(file.toString(), "Label"));
+
+        // a run stopped after 20 trees leaves them in its last checkpoint, which is an ordinary model file
+        GBTModel firstHalf = GBTModel.train(config(20, checkpoint), Data.load(file.toString(), "Label"));
+        Check.isTrue(Files.exists(checkpoint), "checkpoint written");
+        Check.sameValues(firstHalf.predictMargins(test), GBTModel.load(checkpoint).predictMargins(test), "checkpoint");
+
+        Data data = Data.load(file.toString(), "Label");
+        GBTModel resumed = GBTModel.resume(checkpoint, config(40, checkpoint), data);
+        Check.equal(40, resumed.getNumTrees(), "trees");
+        Check.sameValues(whole.predictMargins(test), resumed.predictMargins(test), "resumed margins");
+        Check.sameValues(whole.predictMargins(test), TestData.logits(data), "training logits");
+        Check.sameValues(whole.predictMargins(test), GBTModel.load(checkpoint).predictMargins(test),
+                "last checkpoint of the resumed run");
+    }
+
+    static void finishedRunIsJustScored() throws Exception {
+        Path file = TestData.writeCsv(500, 3, 28);
+        Path checkpoint = TestData.tempFile(".gbt");
+        GBTModel model = GBTModel.train(config(10, checkpoint), Data.load(file.toString(), "Label"));
+        Data data = Data.load(file.toString(), "Label");
+        GBTModel resumed = GBTModel.resume(checkpoint, config(10, checkpoint), data);
+        Check.equal(10, resumed.getNumTrees(), "trees");
+        Check.sameValues(model.predictMargins(data), TestData.logits(data), "scored data");
+    }
+
+    static void badCheckpointsAreRejected() throws Exception {
+        Path file = TestData.writeCsv(300, 3, 29);
+        Path checkpoint = TestData.tempFile(".gbt");
+        GBTModel model = GBTModel.train(config(5, checkpoint), Data.load(file.toString(), "Label"));
+        Data otherFeatures = Data.load(TestData.writeCsv(300, 2, 29).toString(), "Label");
+        Check.raises(IllegalArgumentException.class, () -> GBTModel.resume(checkpoint, config(10, checkpoint),
+                otherFeatures), "different features");
+        Check.raises(IllegalArgumentException.class, () -> GBTModel.resume(checkpoint, config(5, checkpoint),
+                otherFeatures), "different features, finished run");
+        Path plain = TestData.tempFile(".gbt");
+        model.save(plain);
+        Check.raises(IOException.class, () -> GBTModel.resume(plain, config(10, null),
+                Data.load(file.toString(), "Label")), "not a checkpoint");
+        Check.raises(IllegalArgumentException.class, () -> Config.builder().setCheckpoint("x", 0), "interval 0");
+    }
+
+    private static Config config(int numTrees, Path checkpoint) {
+        Config.Builder builder = Config.builder().setNumTrees(numTrees).setMaxTreeDepth(4).setMinSamplesLeaf(5)
+                .setLearningRate(0.3);
+        if (checkpoint != null) {
+            builder.setCheckpoint(checkpoint.toString(), 5);
+        }
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,114 @@
+package model;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// ConfigSearch: concurrent runs over shared data, pruning, and the configs of grid and sample
+class ConfigSearchTest {
+
+    public static void main(String[] args) throws Exception {
+        gridAndSampleCoverTheDimensions();
+        runsEqualSoloTraining();
+        pruningDoesNotDependOnThreads();
+        badSearchesAreRejected();
+        System.out.println("ConfigSearchTest passed");
+    }
+
+    static void gridAndSampleCoverTheDimensions() {
+        Integer[] depths = {2, 4};
+        ConfigSearch.Dimension<Integer> depth = ConfigSearch.Dimension.of(Config.Builder::setMaxTreeDepth, depths);
+        depths[0] = 9; // the values were copied
+        ConfigSearch.Dimension<Double> rate = ConfigSearch.Dimension.of(Config.Builder::setLearningRate, 0.1, 0.2, 0.3);
+        List<Config> grid = ConfigSearch.grid(() -> Config.builder().setNumTrees(7), depth, rate);
+        Check.equal(6, grid.size(), "grid size");
+        for (int configId = 0; configId < grid.size(); configId++) {
+            Check.equal((configId < 3) ? 2 : 4, grid.get(configId).getMaxTreeDepth(), "depth of config " + configId);
+            Check.near(0.1 * (configId % 3 + 1), grid.get(configId).getLearningRate(), 1e-12, "rate of config " + configId);
+            Check.equal(7, grid.get(configId).getNumTrees(), "base setting");
+        }
+
+        List<Config> sample = ConfigSearch.sample(Config::builder, 20, 5L, depth, rate);
+        List<Config> again = ConfigSearch.sample(Config::builder, 20, 5L, depth, rate);
+        Check.equal(20, sample.size(), "sample size");
+        for (int configId = 0; configId < sample.size(); configId++) {
+            Config config = sample.get(configId);
+            Check.isTrue(config.getMaxTreeDepth() == 2 || config.getMaxTreeDepth() == 4, "sampled depth");
+            Check.equal(config.getMaxTreeDepth(), again.get(configId).getMaxTreeDepth(), "same seed, same depth");
+            Check.equal(config.getLearningRate(), again.get(configId).getLearningRate(), "same seed, same rate");
+        }
+    }
+
+    static void runsEqualSoloTraining() throws Exception {
+        Path trainFile = TestData.writeCsv(1500, 4, 40);
+        Path validationFile = TestData.writeCsv(800, 4, 41);
+        List<Config> configs = ConfigSearch.grid(() -> Config.builder().setNumTrees(15).setMinSamplesLeaf(5),
+                ConfigSearch.Dimension.of(Config.Builder::setMaxTreeDepth, 2, 4),
+                ConfigSearch.Dimension.of(Config.Builder::setNumBins, 16, 64),
+                ConfigSearch.Dimension.of(Config.Builder::setLearningRate, 0.1, 0.3));
+        Data train = Data.load(trainFile.toString(), "Label");
+        Data validation = Data.load(validationFile.toString(), "Label");
+        List<SearchResult> leaderboard = new ConfigSearch(train, validation).setNumThreads(3).run(configs);
+        Check.equal(configs.size(), leaderboard.size(), "results");
+        for (int rank = 0; rank < leaderboard.size(); rank++) {
+            SearchResult result = leaderboard.get(rank);
+            if (rank > 0) {
+                Check.isTrue(leaderboard.get(rank - 1).getEvaluation().getLogLoss()
+                        <= result.getEvaluation().getLogLoss(), "sorted at rank " + rank);
+            }
+            Check.isTrue(!result.isPruned(), "not pruned");
+            Data soloValidation = Data.load(validationFile.toString(), "Label");
+            GBTModel solo = GBTModel.train(result.getConfig(), Data.load(trainFile.toString(), "Label"),
+                    soloValidation);
+            Check.sameValues(solo.predictMargins(validation), result.getModel().predictMargins(validation),
+                    "margins of " + result.getConfig());
+            Check.equal(soloValidation.evaluate(new double[0]).getLogLoss(), result.getEvaluation().getLogLoss(),
+                    "log-loss of " + result.getConfig());
+        }
+        // the shared data was only read
+        Check.sameValues(new double[train.getNumRows()], TestData.logits(train), "training data's logits");
+    }
+
+    static void pruningDoesNotDependOnThreads() throws Exception {
+        Path trainFile = TestData.writeCsv(1500, 4, 42);
+        Path validationFile = TestData.writeCsv(800, 4, 43);
+        List<Config> configs = ConfigSearch.grid(() -> Config.builder().setNumTrees(40).setNumBins(32),
+                ConfigSearch.Dimension.of(Config.Builder::setMinSamplesLeaf, 5, 300),
+                ConfigSearch.Dimension.of(Config.Builder::setMaxTreeDepth, 1, 3, 6),
+                ConfigSearch.Dimension.of(Config.Builder::setLearningRate, 0.1, 0.5));
+        Map<Config, Boolean> firstPruned = null;
+        for (int numThreads : new int[]{1, 2, 5}) {
+            Data train = Data.load(trainFile.toString(), "Label");
+            Data validation = Data.load(validationFile.toString(), "Label");
+            List<SearchResult> leaderboard = new ConfigSearch(train, validation).setNumThreads(numThreads)
+                    .setPruning(5).run(configs);
+            Map<Config, Boolean> pruned = new HashMap<>();
+            for (SearchResult result : leaderboard) {
+                pruned.put(result.getConfig(), result.isPruned());
+                if (result.isPruned()) {
+                    Check.isTrue(result.getModel().getNumTrees() < 40, "pruned run stopped early");
+                }
+            }
+            Check.isTrue(pruned.containsValue(true), "some runs pruned with " + numThreads + " threads");
+            if (firstPruned == null) {
+                firstPruned = pruned;
+            } else {
+                Check.equal(firstPruned, pruned, "runs pruned with " + numThreads + " threads");
+            }
+        }
+    }
+
+    static void badSearchesAreRejected() throws Exception {
+        Data data = Data.load(TestData.writeCsv(100, 2, 44).toString(), "Label");
+        Check.raises(IllegalArgumentException.class, () -> new ConfigSearch(data, data), "validation is training");
+        Check.raises(IllegalArgumentException.class, () -> new ConfigSearch(data, null), "no validation");
+        Data other = Data.load(TestData.writeCsv(100, 2, 45).toString(), "Label");
+        Check.raises(IllegalArgumentException.class, () -> new ConfigSearch(data, other).setPruning(0), "no grace");
+        Check.raises(IllegalArgumentException.class, () -> new ConfigSearch(data, other).setNumThreads(0),
+                "no threads");
+        Check.raises(IllegalArgumentException.class, () -> ConfigSearch.Dimension.of(Config.Builder::setMaxTreeDepth),
+                "no values");
+    }
+
+}
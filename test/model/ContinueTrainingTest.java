@@ -0,0 +1,57 @@
+package model;
+
+import java.nio.file.Path;
+
+// continueTraining: growing a model in two goes gives the same trees as growing it at once
+class ContinueTrainingTest {
+
+    public static void main(String[] args) throws Exception {
+        twoGoesEqualOne();
+        badExtraTreesAreRejected();
+        System.out.println("ContinueTrainingTest passed");
+    }
+
+    static void twoGoesEqualOne() throws Exception {
+        Path file = TestData.writeCsv(1500, 4, 25);
+        for (int numBins : new int[]{0, 32}) {
+            Data test = Data.load(file.toString(), "Label");
+            double[] expected = GBTModel.train(config(40, numBins), Data.load(file.toString(), "Label"))
+                    .predictMargins(test);
+
+            // the logits left by training the base are reused
+            Data data = Data.load(file.toString(), "Label");
+            GBTModel base = GBTModel.train(config(25, numBins), data);
+            GBTModel continued = base.continueTraining(config(15, numBins), data, 15);
+            Check.equal(40, continued.getNumTrees(), "trees");
+            Check.equal(25, base.getNumTrees(), "trees of the base");
+            Check.sameValues(expected, continued.predictMargins(test), "reused logits, " + numBins + " bins");
+            Check.sameValues(expected, TestData.logits(data), "training logits, " + numBins + " bins");
+
+            // a base loaded from file, on fresh data, has its logits recomputed
+            Path modelFile = TestData.tempFile(".gbt");
+            base.save(modelFile);
+            GBTModel loaded = GBTModel.load(modelFile);
+            GBTModel fromFile = loaded.continueTraining(config(15, numBins), Data.load(file.toString(), "Label"), 15);
+            Check.sameValues(expected, fromFile.predictMargins(test), "recomputed logits, " + numBins + " bins");
+        }
+    }
+
+    static void badExtraTreesAreRejected() throws Exception {
+        Data data = Data.load(TestData.writeCsv(300, 2, 26).toString(), "Label");
+        GBTModel model = GBTModel.train(config(3, 0), data);
+        Check.raises(IllegalArgumentException.class, () -> model.continueTraining(config(3, 0), data, 0), "no trees");
+        Data other = Data.load(TestData.writeCsv(300, 3, 26).toString(), "Label");
+        Check.raises(IllegalArgumentException.class, () -> model.continueTraining(config(3, 0), other, 3),
+                "different features");
+    }
+
+    private static Config config(int numTrees, int numBins) {
+        Config.Builder builder = Config.builder().setNumTrees(numTrees).setMaxTreeDepth(4).setMinSamplesLeaf(5)
+                .setLearningRate(0.3);
+        if (numBins > 0) {
+            builder.setNumBins(numBins);
+        }
+        return builder.build();
+    }
+
+}
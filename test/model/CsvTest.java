@@ -0,0 +1,113 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Random;
+
+// Loading CSV files from bytes (CsvReader), and parsing numbers without Strings (NumberParser)
+class CsvTest {
+
+    public static void main(String[] args) throws Exception {
+        numbersParseAsTheJdkDoes();
+        badNumbersAreRejected();
+        fileOfSeveralChunksLoadsAsWritten();
+        lineEndingsMayBeWindowsOnes();
+        onlyTheFinalLineEndingMayBeLeftOver();
+        System.out.println("CsvTest passed");
+    }
+
+    static void numbersParseAsTheJdkDoes() {
+        String[] awkward = {"0", "-0", "0.0", "-0.0", "1", "-1.5", "0.1", "0.3", "123.456", "1e3", "1E-3", "+2.5",
+                ".5", "5.", "007", "9007199254740993", "9007199254740992.5", "1234567890123456789",
+                "12345678901234567890", "1.7976931348623157e308", "1.8e308", "4.9e-324", "2.4e-324", "1e-400",
+                "2.2250738585072011e-308", "2.2250738585072014e-308", "0.000000000000000000000000000001",
+                "NaN", "-Infinity", "0x1p3", " 1", "1 "};
+        for (String text : awkward) {
+            checkDouble(text);
+        }
+        Random random = new Random(15);
+        for (int i = 0; i < 50_000; i++) {
+            checkDouble(Double.toString(Double.longBitsToDouble(random.nextLong())));
+            checkDouble(String.format("%.3f", random.nextGaussian() * 100.0));
+            checkDouble(Long.toString(random.nextLong() >> random.nextInt(64)) + "e" + (random.nextInt(700) - 350));
+        }
+        for (String text : new String[] {"0", "1", "-1", "+7", "2147483647", "-2147483648", "0012"}) {
+            byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+            Check.equal(Integer.parseInt(text), NumberParser.parseInt(bytes, 0, bytes.length), "int " + text);
+        }
+    }
+
+    private static void checkDouble(String text) {
+        byte[] bytes = ("," + text + ",").getBytes(StandardCharsets.US_ASCII);
+        double expected = Double.parseDouble(text);
+        double actual = NumberParser.parseDouble(bytes, 1, bytes.length - 1);
+        Check.isTrue(Double.doubleToLongBits(expected) == Double.doubleToLongBits(actual),
+                text + ": expected " + expected + ", got " + actual);
+    }
+
+    static void badNumbersAreRejected() {
+        for (String text : new String[] {"", "-", "1.2.3", "1e", "abc", "1,5"}) {
+            byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+            Check.raises(NumberFormatException.class, () -> NumberParser.parseDouble(bytes, 0, bytes.length),
+                    "double '" + text + "'");
+        }
+        for (String text : new String[] {"", "1.0", "2147483648", "x"}) {
+            byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+            Check.raises(NumberFormatException.class, () -> NumberParser.parseInt(bytes, 0, bytes.length),
+                    "int '" + text + "'");
+        }
+    }
+
+    // bigger than a chunk, so parsed in several pieces, which must still fill the rows in order
+    static void fileOfSeveralChunksLoadsAsWritten() throws Exception {
+        int numRows = 200_000;
+        Random random = new Random(16);
+        double[][] columns = new double[3][numRows];
+        boolean[] labels = new boolean[numRows];
+        StringBuilder builder = new StringBuilder("A,B,Label,C\n");
+        for (int row = 0; row < numRows; row++) {
+            for (int col = 0; col < columns.length; col++) {
+                columns[col][row] = random.nextGaussian() * Math.pow(10.0, random.nextInt(8) - 4);
+            }
+            labels[row] = random.nextBoolean();
+            builder.append(columns[0][row]).append(',').append(columns[1][row]).append(',')
+                    .append(labels[row] ? 1 : 0).append(',').append(columns[2][row]).append('\n');
+        }
+        Path file = TestData.writeFile(builder.toString(), ".csv");
+        Check.isTrue(file.toFile().length() > (8 << 20), "file of at least two chunks");
+
+        Data data = Data.load(file.toString(), "Label");
+        Check.equal(numRows, data.getNumRows(), "rows");
+        for (int col = 0; col < columns.length; col++) {
+            Check.sameValues(columns[col], data.getEntryValues(col), "column " + col);
+        }
+        for (int row = 0; row < numRows; row++) {
+            Check.equal(labels[row], data.getLabel(row), "label of row " + row);
+        }
+    }
+
+    static void lineEndingsMayBeWindowsOnes() throws Exception {
+        Path file = TestData.writeFile("Label,A\r\n1,2.5\r\n0,-3\r\n", ".csv");
+        Data data = Data.load(file.toString(), "Label");
+        Check.equal("A", data.getFeatureName(0), "feature name");
+        Check.sameValues(new double[] {2.5, -3.0}, data.getEntryValues(0), "column");
+    }
+
+    // as with the line-by-line reader before, an empty line is a row without a label (or without enough columns)
+    static void onlyTheFinalLineEndingMayBeLeftOver() throws Exception {
+        for (String contents : new String[]{"Label,A\n1,2.5\n0,-3", "Label,A\n1,2.5\n0,-3\n", "Label,A\r\n1,2.5\r\n0,-3\r\n"}) {
+            Data data = Data.load(TestData.writeFile(contents, ".csv").toString(), "Label");
+            Check.equal(2, data.getNumRows(), "rows of " + contents.replace("\n", "\\n").replace("\r", "\\r"));
+        }
+        Path labelFirst = TestData.writeFile("Label,A\n1,2.5\n\n0,-3\n", ".csv");
+        Check.raises(NumberFormatException.class, () -> Data.load(labelFirst.toString(), "Label"), "empty line");
+        Check.raises(NumberFormatException.class, () -> Data.loadSparse(labelFirst.toString(), "Label"),
+                "empty line, sparse");
+        Path labelLast = TestData.writeFile("A,Label\n2.5,1\n0,0\n\n", ".csv");
+        Check.raises(ArrayIndexOutOfBoundsException.class, () -> Data.load(labelLast.toString(), "Label"),
+                "empty last line");
+        Path emptyCrLf = TestData.writeFile("Label,A\r\n1,2.5\r\n\r\n", ".csv");
+        Check.raises(NumberFormatException.class, () -> Data.load(emptyCrLf.toString(), "Label"), "empty CRLF line");
+    }
+
+}
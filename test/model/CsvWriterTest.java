@@ -0,0 +1,82 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+// CsvWriter's number formatting against the JDK's, and the files written through it
+class CsvWriterTest {
+
+    public static void main(String[] args) throws Exception {
+        doublesAsDoubleToString();
+        fixedAsStringFormat();
+        savedScoresHaveTheNamedColumns();
+        System.out.println("CsvWriterTest passed");
+    }
+
+    static void doublesAsDoubleToString() throws Exception {
+        double[] awkward = {0.0, -0.0, 1.0, -1.0, 0.001, 0.0009999, 9999.999, 10000.0, 1e-3 - 1e-19, 0.1 + 0.2,
+                1.0 / 3.0, 123.456, -0.5, 1e300, 4.9e-324, Double.NaN, Double.POSITIVE_INFINITY, 100.0, 2.05};
+        for (double value : awkward) {
+            Check.equal(Double.toString(value), formatDouble(value), "writeDouble(" + value + ")");
+        }
+        Random random = new Random(16);
+        for (int count = 0; count < 100000; count++) {
+            double value = (random.nextInt(20000001) - 10000000) / 1000.0;
+            Check.equal(Double.toString(value), formatDouble(value), "writeDouble(" + value + ")");
+            value = random.nextGaussian() * Math.pow(10, random.nextInt(8) - 4);
+            Check.equal(Double.toString(value), formatDouble(value), "writeDouble(" + value + ")");
+        }
+    }
+
+    static void fixedAsStringFormat() throws Exception {
+        double[] awkward = {0.0, 1.0, 0.0005, 0.0015, 0.1235, 0.9995, 0.9994999, 0.5, 0.125, 1.0 / 3.0, 2.0 / 3.0};
+        for (double value : awkward) {
+            Check.equal(String.format(Locale.ROOT, "%.3f", value), formatFixed(value, 3), "writeFixed(" + value + ")");
+        }
+        Random random = new Random(17);
+        for (int count = 0; count < 100000; count++) {
+            double value = random.nextDouble();
+            int decimals = 1 + random.nextInt(9);
+            Check.equal(String.format(Locale.ROOT, "%." + decimals + "f", value), formatFixed(value, decimals),
+                    "writeFixed(" + value + ", " + decimals + ")");
+        }
+    }
+
+    static void savedScoresHaveTheNamedColumns() throws Exception {
+        Path file = TestData.writeCsv("Id,Label,A", "7,1,0.5", "8,0,-1.25");
+        Data data = Data.load(file.toString(), "Label");
+        Path scores = TestData.tempFile(".csv");
+        data.saveScores(scores.toString(), "Id");
+        Check.equal("Id,Label,Prob\n7.0,1,0.500\n8.0,0,0.500\n",
+                new String(Files.readAllBytes(scores), StandardCharsets.UTF_8), "scores file");
+        Check.raises(IllegalArgumentException.class, () -> data.saveScores(scores.toString(), "Missing"),
+                "unknown column");
+
+        // everything saved reads back as the same values
+        Path saved = TestData.tempFile(".csv");
+        data.save(saved.toString());
+        Data reloaded = Data.load(saved.toString(), "Label");
+        Check.sameValues(data.getEntryValues(1), reloaded.getEntryValues(1), "column A");
+    }
+
+    private static String formatDouble(double value) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (CsvWriter writer = new CsvWriter(bytes)) {
+            writer.writeDouble(value);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    private static String formatFixed(double value, int decimals) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (CsvWriter writer = new CsvWriter(bytes)) {
+            writer.writeFixed(value, decimals);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+}
@@ -0,0 +1,102 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+// The binary data format (Data.saveBinary and loadBinary), and the cached copy of a CSV file (loadCached)
+class DataFileTest {
+
+    public static void main(String[] args) throws Exception {
+        binaryFileHoldsTheSameData();
+        cacheIsUsedUntilTheCsvFileChanges();
+        cacheIsOnlyWrittenByLoadCached();
+        System.out.println("DataFileTest passed");
+    }
+
+    static void binaryFileHoldsTheSameData() throws Exception {
+        Data data = Data.load(TestData.writeCsv(500, 4, 17).toString(), "Label");
+        FeatureBins bins = data.getBins(16);
+        Path binary = TestData.tempFile(".gbtdata");
+        data.saveBinary(binary.toString());
+
+        Data loaded = Data.loadBinary(binary.toString());
+        checkSameData(data, loaded);
+        // bins computed before saving are saved too
+        FeatureBins loadedBins = loaded.getBins(16);
+        for (int featureId = 0; featureId < data.getNumFeatures(); featureId++) {
+            Check.equal(bins.getNumBins(featureId), loadedBins.getNumBins(featureId), "bins of " + featureId);
+            for (int binId = 0; binId < bins.getNumBins(featureId) - 1; binId++) {
+                Check.equal(bins.getThreshold(featureId, binId), loadedBins.getThreshold(featureId, binId),
+                        "edge " + binId + " of " + featureId);
+            }
+        }
+    }
+
+    static void cacheIsUsedUntilTheCsvFileChanges() throws Exception {
+        Path csv = TestData.writeCsv("Label,A,B", "1,0,2", "0,1,-3");
+        Path cache = Paths.get(csv + ".gbtdata");
+        cache.toFile().deleteOnExit();
+        FileTime modified = Files.getLastModifiedTime(csv);
+
+        Data first = Data.loadCached(csv.toString(), "Label");
+        Check.isTrue(Files.exists(cache), "cache written");
+        checkSameData(Data.load(csv.toString(), "Label"), first);
+
+        // as long as the size and modification time are unchanged, the cache is taken to be up to date
+        Files.write(csv, "Label,A,B\n1,0,2\n0,1,-4\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(csv, modified);
+        checkSameData(first, Data.loadCached(csv.toString(), "Label"));
+
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(modified.toMillis() + 2000));
+        Data changed = Data.loadCached(csv.toString(), "Label");
+        Check.equal(-4.0, changed.getFeatureValue(1, 1), "value from the changed file");
+        // and another label means another cache
+        Data byA = Data.loadCached(csv.toString(), "A");
+        Check.equal("Label", byA.getFeatureName(0), "first feature, with A as the label");
+    }
+
+    // training on cached data doesn't write to the cache: only loadCached does, when asked to keep bins
+    static void cacheIsOnlyWrittenByLoadCached() throws Exception {
+        Path csv = TestData.writeCsv(400, 3, 18);
+        Path cache = Paths.get(csv + ".gbtdata");
+        cache.toFile().deleteOnExit();
+        Data data = Data.loadCached(csv.toString(), "Label");
+        byte[] written = Files.readAllBytes(cache);
+        GBTModel.train(Config.builder().setNumTrees(2).setNumBins(16).setMinSamplesLeaf(5).build(), data);
+        Check.sameBytes(written, Files.readAllBytes(cache), "cache after training");
+        Check.isTrue(!new DataFile(cache).getBinsByNumBins().containsKey(16), "no bins in the cache");
+
+        Data binned = Data.loadCached(csv.toString(), "Label", 16);
+        Check.isTrue(new DataFile(cache).getBinsByNumBins().containsKey(16), "bins kept in the cache");
+        checkSameData(data, binned);
+        Data again = Data.loadCached(csv.toString(), "Label");
+        FeatureBins bins = binned.getBins(16);
+        FeatureBins cachedBins = again.getBins(16);
+        for (int featureId = 0; featureId < data.getNumFeatures(); featureId++) {
+            Check.equal(bins.getNumBins(featureId), cachedBins.getNumBins(featureId), "bins of " + featureId);
+        }
+        // the cache is replaced in one step, from a temporary file alongside it which is gone afterwards
+        String prefix = cache.getFileName().toString();
+        try (Stream<Path> files = Files.list(cache.toAbsolutePath().getParent())) {
+            Check.equal(0L, files.filter(file -> file.getFileName().toString().startsWith(prefix)
+                    && file.toString().endsWith(".tmp")).count(), "temporary files left");
+        }
+    }
+
+    private static void checkSameData(Data expected, Data actual) {
+        Check.equal(expected.getNumRows(), actual.getNumRows(), "rows");
+        Check.equal(expected.getNumFeatures(), actual.getNumFeatures(), "features");
+        for (int featureId = 0; featureId < expected.getNumFeatures(); featureId++) {
+            Check.equal(expected.getFeatureName(featureId), actual.getFeatureName(featureId), "feature name");
+            Check.sameValues(expected.getEntryValues(featureId), actual.getEntryValues(featureId), "column " + featureId);
+        }
+        for (int row = 0; row < expected.getNumRows(); row++) {
+            Check.equal(expected.getLabel(row), actual.getLabel(row), "label of row " + row);
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+package model;
+
+// Loading a CSV file into Data's columns
+class DataTest {
+
+    public static void main(String[] args) throws Exception {
+        columnsHoldTheFileByRow();
+        badFilesAreRejected();
+        System.out.println("DataTest passed");
+    }
+
+    static void columnsHoldTheFileByRow() throws Exception {
+        Data data = Data.load(TestData.writeCsv(
+                "A,Label,B",
+                "1.5,1,-2",
+                "0,0,3.25",
+                "-7,1,1e3").toString(), "Label");
+
+        Check.equal(3, data.getNumRows(), "rows");
+        Check.equal(2, data.getNumFeatures(), "features");
+        Check.equal("A", data.getFeatureName(0), "first feature");
+        Check.equal("B", data.getFeatureName(1), "second feature");
+        Check.sameValues(new double[] {1.5, 0.0, -7.0}, data.getEntryValues(0), "column A");
+        Check.sameValues(new double[] {-2.0, 3.25, 1000.0}, data.getEntryValues(1), "column B");
+        Check.equal(3.25, data.getFeatureValue(1, 1), "B of row 1");
+        Check.isTrue(data.getLabel(0) && !data.getLabel(1) && data.getLabel(2), "labels");
+    }
+
+    static void badFilesAreRejected() throws Exception {
+        String noLabel = TestData.writeCsv("A,B", "1,2").toString();
+        Check.raises(ArrayIndexOutOfBoundsException.class, () -> Data.load(noLabel, "Label"), "no label column");
+        String badLabel = TestData.writeCsv("Label,A", "2,1").toString();
+        Check.raises(NumberFormatException.class, () -> Data.load(badLabel, "Label"), "label of 2");
+        String badValue = TestData.writeCsv("Label,A", "1,one").toString();
+        Check.raises(NumberFormatException.class, () -> Data.load(badValue, "Label"), "value that isn't a number");
+    }
+
+}
@@ -0,0 +1,56 @@
+package model;
+
+import java.nio.file.Path;
+
+// Training against a validation set, with and without early stopping
+class EarlyStoppingTest {
+
+    public static void main(String[] args) throws Exception {
+        stopsAndDropsTheTrailingTrees();
+        withoutPatienceEveryTreeIsBuilt();
+        System.out.println("EarlyStoppingTest passed");
+    }
+
+    static void stopsAndDropsTheTrailingTrees() throws Exception {
+        Path train = TestData.writeCsv(1500, 5, 18);
+        Path validation = TestData.writeCsv(1000, 5, 19);
+        Data trainData = Data.load(train.toString(), "Label");
+        Data validationData = Data.load(validation.toString(), "Label");
+        GBTModel model = GBTModel.train(Config.builder().setNumTrees(300).setMaxTreeDepth(5).setMinSamplesLeaf(5)
+                .setLearningRate(0.5).setPatience(5).build(), trainData, validationData);
+
+        int numTrees = numTrees(model);
+        Check.isTrue(numTrees < 300, "stopped early, with " + numTrees + " trees");
+        // the logits left in both data sets are those of the trees kept
+        Data validationScored = Data.load(validation.toString(), "Label");
+        model.predict(validationScored);
+        Check.sameValues(TestData.logits(validationScored), TestData.logits(validationData), "validation logits");
+        Data trainScored = Data.load(train.toString(), "Label");
+        model.predict(trainScored);
+        Check.nearValues(TestData.logits(trainScored), TestData.logits(trainData), 1e-9, "training logits");
+
+        // one more tree would not have been kept
+        Data longer = Data.load(validation.toString(), "Label");
+        GBTModel.train(Config.builder().setNumTrees(numTrees + 1).setMaxTreeDepth(5).setMinSamplesLeaf(5)
+                .setLearningRate(0.5).build(), Data.load(train.toString(), "Label")).predict(longer);
+        Check.isTrue(validationScored.evaluate(new double[0]).getLogLoss()
+                <= longer.evaluate(new double[0]).getLogLoss(), "the best tree count was kept");
+    }
+
+    static void withoutPatienceEveryTreeIsBuilt() throws Exception {
+        Path train = TestData.writeCsv(800, 3, 20);
+        Path validation = TestData.writeCsv(400, 3, 21);
+        Data validationData = Data.load(validation.toString(), "Label");
+        GBTModel model = GBTModel.train(Config.builder().setNumTrees(30).setMaxTreeDepth(3).setMinSamplesLeaf(5)
+                .setLearningRate(0.5).build(), Data.load(train.toString(), "Label"), validationData);
+        Check.equal(30, numTrees(model), "trees");
+        Data validationScored = Data.load(validation.toString(), "Label");
+        model.predict(validationScored);
+        Check.sameValues(TestData.logits(validationScored), TestData.logits(validationData), "validation logits");
+    }
+
+    private static int numTrees(GBTModel model) {
+        return model.toString().split("\n").length;
+    }
+
+}
@@ -0,0 +1,88 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+// The metrics of Evaluation, against direct (quadratic) computations of them
+class EvaluationTest {
+
+    public static void main(String[] args) {
+        smallExample();
+        randomScoresWithTies();
+        System.out.println("EvaluationTest passed");
+    }
+
+    static void smallExample() {
+        // ranked: +, -, + (tied with the -), -
+        double[] logits = {3.0, 1.0, 1.0, -2.0};
+        boolean[] labels = {true, false, true, false};
+        Evaluation evaluation = new Evaluation(logits, labels, new double[]{0.5});
+        // pairs: (0,1) (0,3) (2,3) right, (2,1) tied
+        Check.near(3.5 / 4.0, evaluation.getRocAuc(), 1e-12, "ROC-AUC");
+        // precision 1 at the first positive, 2/3 at the second (whose tie group holds three rows)
+        Check.near((1.0 + 2.0 / 3.0) / 2.0, evaluation.getPrAuc(), 1e-12, "PR-AUC");
+        Check.near(Arrays.stream(new double[]{
+                Math.log(1 + Math.exp(-3.0)), Math.log(1 + Math.exp(1.0)), Math.log(1 + Math.exp(-1.0)),
+                Math.log(1 + Math.exp(-2.0))}).sum() / 4.0, evaluation.getLogLoss(), 1e-12, "log-loss");
+        Check.near(0.5, evaluation.getPrecisions()[0], 0.0, "precision at 0.5");
+        Check.near(1.0, evaluation.getRecalls()[0], 0.0, "recall at 0.5");
+    }
+
+    static void randomScoresWithTies() {
+        Random random = new Random(17);
+        int numRows = 2000;
+        double[] logits = new double[numRows];
+        boolean[] labels = new boolean[numRows];
+        for (int row = 0; row < numRows; row++) {
+            logits[row] = Math.round(random.nextGaussian() * 8.0) / 4.0; // plenty of ties
+            labels[row] = random.nextDouble() < 1.0 / (1.0 + Math.exp(-logits[row]));
+        }
+        double[] targets = {0.9, 0.5, 0.75, 0.99, 1.0};
+        Evaluation evaluation = new Evaluation(logits, labels, targets);
+
+        double rightPairs = 0.0;
+        long numPairs = 0;
+        double sumLogLoss = 0.0;
+        for (int row = 0; row < numRows; row++) {
+            double prob = 1.0 / (1.0 + Math.exp(-logits[row]));
+            sumLogLoss -= Math.log(labels[row] ? prob : 1.0 - prob);
+            if (!labels[row]) {
+                continue;
+            }
+            for (int other = 0; other < numRows; other++) {
+                if (!labels[other]) {
+                    numPairs++;
+                    rightPairs += (logits[row] > logits[other]) ? 1.0 : (logits[row] == logits[other]) ? 0.5 : 0.0;
+                }
+            }
+        }
+        Check.near(rightPairs / numPairs, evaluation.getRocAuc(), 1e-12, "ROC-AUC");
+        Check.near(sumLogLoss / numRows, evaluation.getLogLoss(), 1e-9, "log-loss");
+
+        // the precision-recall points: the last row (in descending order of logit, ties in row order)
+        // at which the precision reaches the target
+        Integer[] order = IntStream.range(0, numRows).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.comparingDouble((Integer row) -> -logits[row]));
+        long totalPositive = IntStream.range(0, numRows).filter(row -> labels[row]).count();
+        for (int targetId = 0; targetId < targets.length; targetId++) {
+            double precision = 1.0;
+            double recall = 0.0;
+            long positivesAbove = 0;
+            for (int position = 0; position < numRows; position++) {
+                if (labels[order[position]]) {
+                    positivesAbove++;
+                }
+                double current = (double) positivesAbove / (position + 1);
+                if (current >= targets[targetId]) {
+                    precision = current;
+                    recall = (double) positivesAbove / totalPositive;
+                }
+            }
+            Check.near(precision, evaluation.getPrecisions()[targetId], 0.0, "precision at " + targets[targetId]);
+            Check.near(recall, evaluation.getRecalls()[targetId], 0.0, "recall at " + targets[targetId]);
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package model;
+
+import java.util.concurrent.ForkJoinPool;
+
+// The per-row derivatives cached by Gradients
+class GradientsTest {
+
+    public static void main(String[] args) throws Exception {
+        derivativesFollowTheLogits();
+        System.out.println("GradientsTest passed");
+    }
+
+    static void derivativesFollowTheLogits() throws Exception {
+        Data data = Data.load(TestData.writeCsv(
+                "Label,A",
+                "1,0",
+                "0,0",
+                "1,0").toString(), "Label");
+        double[] logits = new double[data.getNumRows()];
+        Gradients gradients = new Gradients(data, logits, ForkJoinPool.commonPool());
+        // all the logits start at 0, so every probability is a half
+        Check.equal(-0.5, gradients.getFirstDeriv(0), "first derivative of a positive row");
+        Check.equal(0.5, gradients.getFirstDeriv(1), "first derivative of a negative row");
+        Check.equal(0.25, gradients.getSecondDeriv(2), "second derivative");
+
+        gradients.incrementLogits(new int[] {0, 1}, 0, 2, 2.0);
+        double prob = 1.0 / (1.0 + Math.exp(-2.0));
+        Check.near(2.0, logits[0], 0.0, "incremented logit");
+        Check.near(prob - 1.0, gradients.getFirstDeriv(0), 1e-15, "first derivative of a positive row");
+        Check.near(prob, gradients.getFirstDeriv(1), 1e-15, "first derivative of a negative row");
+        Check.near(prob * (1.0 - prob), gradients.getSecondDeriv(1), 1e-15, "second derivative");
+        // a row left out keeps its derivatives
+        Check.equal(-0.5, gradients.getFirstDeriv(2), "first derivative of a row not incremented");
+    }
+
+}
@@ -0,0 +1,65 @@
+package model;
+
+import java.nio.file.Path;
+
+// Growing trees level by level (Config.Growth.LEVEL_WISE) or best first (LEAF_WISE) rather than depth first
+class GrowthTest {
+
+    public static void main(String[] args) throws Exception {
+        levelWiseGrowsTheSameTrees();
+        leafWiseKeepsToMaxLeaves();
+        leafWiseWithEnoughLeavesGrowsTheSameTrees();
+        System.out.println("GrowthTest passed");
+    }
+
+    // each node's split only depends on its own rows, so the order the nodes are split in makes no difference
+    static void levelWiseGrowsTheSameTrees() throws Exception {
+        Path train = TestData.writeCsv(2000, 5, 6);
+        Path test = TestData.writeCsv(500, 5, 7);
+        for (Integer numBins : new Integer[] {null, 64}) {
+            double[][] logits = new double[2][];
+            Config.Growth[] growths = {Config.Growth.DEPTH_FIRST, Config.Growth.LEVEL_WISE};
+            for (int growthId = 0; growthId < growths.length; growthId++) {
+                Config.Builder builder = Config.builder().setNumTrees(8).setMaxTreeDepth(5).setMinSamplesLeaf(20)
+                        .setLearningRate(0.3).setL2reg(0.1).setNumThreads(3).setGrowth(growths[growthId]);
+                if (numBins != null) {
+                    builder.setNumBins(numBins);
+                }
+                Data testData = Data.load(test.toString(), "Label");
+                GBTModel.train(builder.build(), Data.load(train.toString(), "Label")).predict(testData);
+                logits[growthId] = TestData.logits(testData);
+            }
+            Check.sameValues(logits[0], logits[1], "logits with " + ((numBins == null) ? "exact splits" : "bins"));
+        }
+    }
+
+    static void leafWiseKeepsToMaxLeaves() throws Exception {
+        Data train = Data.load(TestData.writeCsv(2000, 5, 8).toString(), "Label");
+        Config config = Config.builder().setNumTrees(5).setMinSamplesLeaf(20).setLearningRate(0.3).setL2reg(0.1)
+                .setMaxLeaves(7).build();
+        Check.equal(Config.Growth.LEAF_WISE, config.getGrowth(), "growth");
+        String[] trees = GBTModel.train(config, train).toString().split("\n");
+        Check.equal(5, trees.length, "trees");
+        for (String tree : trees) {
+            // there's plenty to split, so every tree uses its whole budget
+            Check.equal(7, tree.split("Boost: ", -1).length - 1, "leaves of " + tree);
+        }
+        Check.raises(IllegalArgumentException.class, () -> Config.builder().setMaxLeaves(1), "1 leaf");
+    }
+
+    // with a budget of every leaf there could be at that depth, best first gets to them all in the end
+    static void leafWiseWithEnoughLeavesGrowsTheSameTrees() throws Exception {
+        Path train = TestData.writeCsv(2000, 5, 9);
+        Path test = TestData.writeCsv(500, 5, 10);
+        Data depthFirstTest = Data.load(test.toString(), "Label");
+        Config depthFirst = Config.builder().setNumTrees(8).setMaxTreeDepth(4).setMinSamplesLeaf(20)
+                .setLearningRate(0.3).setL2reg(0.1).build();
+        GBTModel.train(depthFirst, Data.load(train.toString(), "Label")).predict(depthFirstTest);
+        Data leafWiseTest = Data.load(test.toString(), "Label");
+        Config leafWise = Config.builder().setNumTrees(8).setMaxTreeDepth(4).setMinSamplesLeaf(20)
+                .setLearningRate(0.3).setL2reg(0.1).setMaxLeaves(16).build();
+        GBTModel.train(leafWise, Data.load(train.toString(), "Label")).predict(leafWiseTest);
+        Check.sameValues(TestData.logits(depthFirstTest), TestData.logits(leafWiseTest), "logits");
+    }
+
+}
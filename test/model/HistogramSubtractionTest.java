@@ -0,0 +1,41 @@
+package model;
+
+import java.nio.file.Path;
+
+// Getting the larger child's histograms by subtraction from its parent's (see HistogramCache)
+class HistogramSubtractionTest {
+
+    public static void main(String[] args) throws Exception {
+        subtractionMatchesRecomputing();
+        cacheKeepsToItsCap();
+        System.out.println("HistogramSubtractionTest passed");
+    }
+
+    static void subtractionMatchesRecomputing() throws Exception {
+        Path train = TestData.writeCsv(2000, 5, 3);
+        Path test = TestData.writeCsv(500, 5, 4);
+
+        Data subtractedTest = Data.load(test.toString(), "Label");
+        Config subtracting = Config.builder().setNumTrees(10).setMaxTreeDepth(5).setMinSamplesLeaf(20)
+                .setLearningRate(0.3).setL2reg(0.1).setNumBins(32).build();
+        GBTModel.train(subtracting, Data.load(train.toString(), "Label")).predict(subtractedTest);
+
+        // with no room to keep the parents' histograms, every child builds its own
+        Data recomputedTest = Data.load(test.toString(), "Label");
+        Config recomputing = Config.builder().setNumTrees(10).setMaxTreeDepth(5).setMinSamplesLeaf(20)
+                .setLearningRate(0.3).setL2reg(0.1).setNumBins(32).setHistogramCacheMB(0).build();
+        GBTModel.train(recomputing, Data.load(train.toString(), "Label")).predict(recomputedTest);
+
+        Check.nearValues(TestData.logits(recomputedTest), TestData.logits(subtractedTest), 1e-9, "logits");
+    }
+
+    static void cacheKeepsToItsCap() {
+        HistogramCache cache = new HistogramCache(Config.builder().setHistogramCacheMB(1).build());
+        Check.isTrue(cache.tryRetain(600_000), "first retain, within the cap");
+        Check.isTrue(!cache.tryRetain(600_000), "second retain, past the cap");
+        cache.release(600_000);
+        Check.isTrue(cache.tryRetain(1 << 20), "retain of the whole cap, once released");
+        Check.raises(IllegalArgumentException.class, () -> Config.builder().setHistogramCacheMB(-1), "negative cap");
+    }
+
+}
@@ -0,0 +1,56 @@
+package model;
+
+import java.nio.file.Path;
+
+// Histogram splits (Config.setNumBins) against exact ones
+class HistogramTest {
+
+    public static void main(String[] args) throws Exception {
+        binEdgesAreHalfwayBetweenValues();
+        matchesExactSplitsWhenEveryValueHasABin();
+        numBinsIsValidated();
+        System.out.println("HistogramTest passed");
+    }
+
+    static void binEdgesAreHalfwayBetweenValues() throws Exception {
+        String[] lines = new String[101];
+        lines[0] = "Label,Many,Few";
+        for (int row = 0; row < 100; row++) {
+            lines[row + 1] = (row % 2) + "," + row + "," + (row % 3);
+        }
+        Data data = Data.load(TestData.writeCsv(lines).toString(), "Label");
+        FeatureBins bins = new FeatureBins(data, 4);
+
+        // too many values: quantile edges, each bin holding about a quarter of the rows
+        Check.equal(4, bins.getNumBins(0), "bins of Many");
+        Check.equal(24.5, bins.getThreshold(0, 0), "first edge of Many");
+        Check.equal(49.5, bins.getThreshold(0, 1), "second edge of Many");
+        Check.equal(74.5, bins.getThreshold(0, 2), "third edge of Many");
+        // few enough values: an edge in every gap
+        Check.equal(3, bins.getNumBins(1), "bins of Few");
+        Check.equal(0.5, bins.getThreshold(1, 0), "first edge of Few");
+        Check.equal(1.5, bins.getThreshold(1, 1), "second edge of Few");
+    }
+
+    static void matchesExactSplitsWhenEveryValueHasABin() throws Exception {
+        Path train = TestData.writeCsv(2000, 5, 1);
+        Path test = TestData.writeCsv(500, 5, 2);
+        Config.Builder builder = Config.builder().setNumTrees(10).setMaxTreeDepth(4).setMinSamplesLeaf(20)
+                .setLearningRate(0.3).setL2reg(0.1);
+
+        Data exactTest = Data.load(test.toString(), "Label");
+        GBTModel.train(builder.build(), Data.load(train.toString(), "Label")).predict(exactTest);
+        Data histogramTest = Data.load(test.toString(), "Label");
+        GBTModel.train(builder.setNumBins(255).build(), Data.load(train.toString(), "Label")).predict(histogramTest);
+
+        // the same trees, up to rounding in the sums of derivatives
+        Check.nearValues(TestData.logits(exactTest), TestData.logits(histogramTest), 1e-9, "logits");
+    }
+
+    static void numBinsIsValidated() {
+        Check.raises(IllegalArgumentException.class, () -> Config.builder().setNumBins(1), "1 bin");
+        Check.raises(IllegalArgumentException.class, () -> Config.builder().setNumBins(256), "256 bins");
+        Check.equal(255, Config.builder().setNumBins(255).build().getNumBins(), "255 bins");
+    }
+
+}
@@ -0,0 +1,61 @@
+package model;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+// predictMargins and predictProba: the scores of predict, without touching the Data
+class MarginsTest {
+
+    public static void main(String[] args) throws Exception {
+        marginsLeaveTheDataAlone();
+        modelsScoreTheSameDataAtOnce();
+        System.out.println("MarginsTest passed");
+    }
+
+    static void marginsLeaveTheDataAlone() throws Exception {
+        Path file = TestData.writeCsv(1500, 4, 21);
+        Data train = Data.load(file.toString(), "Label");
+        GBTModel model = GBTModel.train(Config.builder().setNumTrees(15).setMaxTreeDepth(4).setMinSamplesLeaf(5)
+                .setLearningRate(0.3).build(), train);
+        double[] trainingLogits = TestData.logits(train);
+
+        Data test = Data.load(file.toString(), "Label");
+        double[] margins = model.predictMargins(test);
+        Check.sameValues(new double[test.getNumRows()], TestData.logits(test), "logits of the scored data");
+        Check.sameValues(trainingLogits, margins, "margins");
+        double[] probs = model.predictProba(test);
+        for (int row = 0; row < probs.length; row++) {
+            Check.near(1.0 / (1.0 + Math.exp(-margins[row])), probs[row], 1e-15, "prob of row " + row);
+        }
+
+        // evaluating the margins is evaluating the scored data
+        double[] precisions = {0.6, 0.8};
+        Evaluation outside = test.evaluate(margins, precisions);
+        model.predict(test);
+        Check.sameValues(margins, TestData.logits(test), "logits after predict");
+        Evaluation inside = test.evaluate(precisions);
+        Check.equal(inside.getRocAuc(), outside.getRocAuc(), "ROC-AUC");
+        Check.equal(inside.getLogLoss(), outside.getLogLoss(), "log-loss");
+        Check.sameValues(inside.getRecalls(), outside.getRecalls(), "recalls");
+        Check.raises(IllegalArgumentException.class, () -> test.evaluate(new double[3], precisions), "wrong length");
+    }
+
+    static void modelsScoreTheSameDataAtOnce() throws Exception {
+        Path file = TestData.writeCsv(2000, 3, 22);
+        Data train = Data.load(file.toString(), "Label");
+        GBTModel small = GBTModel.train(Config.builder().setNumTrees(5).setMaxTreeDepth(3).setMinSamplesLeaf(5)
+                .setLearningRate(0.3).build(), train);
+        GBTModel large = GBTModel.train(Config.builder().setNumTrees(25).setMaxTreeDepth(3).setMinSamplesLeaf(5)
+                .setLearningRate(0.3).build(), Data.load(file.toString(), "Label"));
+        Data shared = Data.load(file.toString(), "Label");
+        double[] smallAlone = small.predictMargins(shared);
+        double[] largeAlone = large.predictMargins(shared);
+        for (int attempt = 0; attempt < 5; attempt++) {
+            CompletableFuture<double[]> smallMargins = CompletableFuture.supplyAsync(() -> small.predictMargins(shared));
+            CompletableFuture<double[]> largeMargins = CompletableFuture.supplyAsync(() -> large.predictMargins(shared));
+            Check.sameValues(smallAlone, smallMargins.get(), "small model's margins");
+            Check.sameValues(largeAlone, largeMargins.get(), "large model's margins");
+        }
+    }
+
+}
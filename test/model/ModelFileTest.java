@@ -0,0 +1,42 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Saving a model to file and loading it back (scored from the memory-mapped file)
+class ModelFileTest {
+
+    public static void main(String[] args) throws Exception {
+        loadedModelScoresTheSame();
+        notAModelFileIsRejected();
+        System.out.println("ModelFileTest passed");
+    }
+
+    static void loadedModelScoresTheSame() throws Exception {
+        Path file = TestData.writeCsv(1000, 4, 14);
+        Data train = Data.load(file.toString(), "Label");
+        GBTModel model = GBTModel.train(Config.builder().setNumTrees(20).setMaxTreeDepth(4).setMinSamplesLeaf(5)
+                .setLearningRate(0.3).setNumBins(64).build(), train);
+        Path modelFile = TestData.tempFile(".gbt");
+        model.save(modelFile);
+
+        GBTModel loaded = GBTModel.load(modelFile);
+        Data scored = Data.load(file.toString(), "Label");
+        loaded.predict(scored);
+        Check.sameValues(TestData.logits(train), TestData.logits(scored), "logits");
+        double[] features = {0.5, -1.0, 2.0, 0.0};
+        Check.equal(model.predictMargin(features), loaded.predictMargin(features), "single margin");
+
+        // a loaded model saves just the same file again
+        Path resaved = TestData.tempFile(".gbt");
+        loaded.save(resaved);
+        Check.sameBytes(Files.readAllBytes(modelFile), Files.readAllBytes(resaved), "resaved file");
+    }
+
+    static void notAModelFileIsRejected() throws Exception {
+        Path notModel = TestData.writeCsv("Label,A", "1,2");
+        Check.raises(IOException.class, () -> GBTModel.load(notModel), "CSV file");
+    }
+
+}
@@ -0,0 +1,76 @@
+package model;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Scoring with the trees compiled into a Forest, block by block or one row at a time
+class PredictTest {
+
+    public static void main(String[] args) throws Exception {
+        predictMatchesTrainingLogits();
+        blocksDontChangeTheScores();
+        singleRowsScoreAsInBatch();
+        System.out.println("PredictTest passed");
+    }
+
+    // training leaves every row with the sum of its leaves' increments, tree by tree, which is just what
+    // scoring the same rows again has to give
+    static void predictMatchesTrainingLogits() throws Exception {
+        Path file = TestData.writeCsv(1000, 4, 11);
+        for (Integer numBins : new Integer[] {null, 32}) {
+            Config.Builder builder = Config.builder().setNumTrees(12).setMaxTreeDepth(5).setMinSamplesLeaf(5)
+                    .setLearningRate(0.3).setL2reg(0.1);
+            if (numBins != null) {
+                builder.setNumBins(numBins);
+            }
+            Data train = Data.load(file.toString(), "Label");
+            GBTModel model = GBTModel.train(builder.build(), train);
+            Data scored = Data.load(file.toString(), "Label");
+            model.predict(scored);
+            Check.sameValues(TestData.logits(train), TestData.logits(scored),
+                    "logits with " + ((numBins == null) ? "exact splits" : "bins"));
+        }
+    }
+
+    // a row scores the same wherever it falls in a block, and scoring again starts afresh
+    static void blocksDontChangeTheScores() throws Exception {
+        Path file = TestData.writeCsv(1000, 4, 12);
+        GBTModel model = GBTModel.train(Config.builder().setNumTrees(12).setMaxTreeDepth(5).setMinSamplesLeaf(5)
+                .setLearningRate(0.3).build(), Data.load(file.toString(), "Label"));
+        Data all = Data.load(file.toString(), "Label");
+        model.predict(all);
+        double[] logits = TestData.logits(all);
+        model.predict(all);
+        Check.sameValues(logits, TestData.logits(all), "logits scored twice");
+
+        // rows 300 to 309 alone, so in a block of their own
+        List<String> lines = Files.readAllLines(file);
+        List<String> partLines = new ArrayList<>(lines.subList(301, 311));
+        partLines.add(0, lines.get(0));
+        Path part = TestData.writeCsv(partLines.toArray(new String[0]));
+        Data partData = Data.load(part.toString(), "Label");
+        model.predict(partData);
+        Check.sameValues(Arrays.copyOfRange(logits, 300, 310), TestData.logits(partData), "logits of a few rows");
+    }
+
+    static void singleRowsScoreAsInBatch() throws Exception {
+        Path file = TestData.writeCsv(500, 4, 13);
+        Data data = Data.load(file.toString(), "Label");
+        GBTModel model = GBTModel.train(Config.builder().setNumTrees(12).setMaxTreeDepth(5).setMinSamplesLeaf(5)
+                .setLearningRate(0.3).build(), data);
+        model.predict(data);
+        double[] features = new double[data.getNumFeatures()];
+        for (int row = 0; row < data.getNumRows(); row++) {
+            for (int featureId = 0; featureId < features.length; featureId++) {
+                features[featureId] = data.getFeatureValue(featureId, row);
+            }
+            Check.equal(data.getLogit(row), model.predictMargin(features), "margin of row " + row);
+            Check.equal(data.getProb(row), model.predictProba(features), "probability of row " + row);
+        }
+        Check.raises(IllegalArgumentException.class, () -> model.predictMargin(new double[3]), "too few features");
+    }
+
+}
@@ -0,0 +1,61 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+// The presorted orderings of the rows (Data.getSortedRowIds), and partitioning them in place (RowPartition)
+class PresortTest {
+
+    public static void main(String[] args) throws Exception {
+        rowsAreSortedStably();
+        partitionKeepsBothHalvesSorted();
+        System.out.println("PresortTest passed");
+    }
+
+    static void rowsAreSortedStably() throws Exception {
+        Data data = Data.load(TestData.writeCsv(
+                "Label,A,B",
+                "1,3,0",
+                "0,-1,0",
+                "1,3,-2",
+                "0,2,0",
+                "1,-1,5").toString(), "Label");
+        int[][] sorted = data.getSortedEntryIds();
+        // equal values stay in row order
+        Check.equal("[1, 4, 3, 0, 2]", Arrays.toString(sorted[0]), "rows by A");
+        Check.equal("[2, 0, 1, 3, 4]", Arrays.toString(sorted[1]), "rows by B");
+        Check.isTrue(sorted == data.getSortedEntryIds(), "sorted once, then kept");
+    }
+
+    static void partitionKeepsBothHalvesSorted() throws Exception {
+        Data data = Data.load(TestData.writeCsv(300, 3, 5).toString(), "Label");
+        RowPartition partition = new RowPartition(data, true);
+        partition.reset(new RowSampler(Config.builder().build(), data.getNumRows()));
+        TrainingContext context = new TrainingContext(Config.builder().build(), data, new Gradients(data, new double[data.getNumRows()],
+                ForkJoinPool.commonPool()), partition,
+                null, null, null, null);
+        LeafNode root = new LeafNode(context);
+        BranchNode split = new BranchNode(1, 0.0, 0, false, 0.0, null, null);
+        split.growChildren(context, root.getBegin(), root.getEnd(), root.getSortedBegins(), root.getSortedEnds());
+        partition.rearrange(split);
+        double[] splitColumn = data.getEntryValues(0);
+        int middle = split.getLeftLeaf().getEnd();
+
+        for (int featureId = 0; featureId < data.getNumFeatures(); featureId++) {
+            int[] rowIds = partition.getSortedEntryIds(featureId);
+            double[] column = data.getEntryValues(featureId);
+            Check.equal(middle, split.getLeftLeaf().getSortedEnds()[featureId], "split point of feature " + featureId);
+            for (int position = 0; position < rowIds.length; position++) {
+                int row = rowIds[position];
+                Check.isTrue((position < middle) == (splitColumn[row] <= 0.0), "row " + row + " on its side");
+                if (position != 0 && position != middle) {
+                    int previousRow = rowIds[position - 1];
+                    Check.isTrue(column[previousRow] < column[row]
+                            || (column[previousRow] == column[row] && previousRow < row),
+                            "feature " + featureId + " still sorted at " + position);
+                }
+            }
+        }
+    }
+
+}
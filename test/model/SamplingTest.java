@@ -0,0 +1,100 @@
+package model;
+
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Row subsampling and GOSS: the rows chosen, and training on them
+class SamplingTest {
+
+    public static void main(String[] args) throws Exception {
+        badRatesAreRejected();
+        subsampleChoosesAboutTheRate();
+        gossKeepsTheLargestGradients();
+        everyRowIsScoredAfterSampledTraining();
+        System.out.println("SamplingTest passed");
+    }
+
+    static void badRatesAreRejected() {
+        Check.raises(IllegalArgumentException.class, () -> Config.builder().setSubsample(0.0), "subsample 0");
+        Check.raises(IllegalArgumentException.class, () -> Config.builder().setSubsample(1.5), "subsample 1.5");
+        Check.raises(IllegalArgumentException.class, () -> Config.builder().setGoss(0.5, 0.5), "rates summing to 1");
+        Check.raises(IllegalArgumentException.class, () -> Config.builder().setGoss(0.2, 0.0), "other rate 0");
+        Check.raises(IllegalArgumentException.class, () -> Config.builder().setSubsample(0.5).setGoss(0.2, 0.1).build(),
+                "subsample with GOSS");
+    }
+
+    static void subsampleChoosesAboutTheRate() throws Exception {
+        Data data = Data.load(TestData.writeCsv(10000, 1, 22).toString(), "Label");
+        RowSampler sampler = new RowSampler(Config.builder().setSubsample(0.3).build(), data.getNumRows());
+        Gradients gradients = new Gradients(data, new double[data.getNumRows()], ForkJoinPool.commonPool());
+        sampler.sample(gradients);
+        Check.isTrue(Math.abs(sampler.getNumSampled() - 3000) < 300, "about 3000 rows: " + sampler.getNumSampled());
+        Check.equal(sampler.getNumSampled(), countSampled(sampler, data.getNumRows()), "rows marked");
+        Check.equal(-0.5 * (data.getLabel(0) ? 1 : -1), gradients.getFirstDeriv(0), "derivatives not scaled");
+    }
+
+    static void gossKeepsTheLargestGradients() throws Exception {
+        Data data = Data.load(TestData.writeCsv(10000, 1, 23).toString(), "Label");
+        Random random = new Random(23);
+        double[] logits = new double[data.getNumRows()];
+        for (int row = 0; row < logits.length; row++) {
+            logits[row] = random.nextGaussian() * 3.0;
+        }
+        Gradients original = new Gradients(data, logits.clone(), ForkJoinPool.commonPool());
+        Gradients gradients = new Gradients(data, logits, ForkJoinPool.commonPool());
+        RowSampler sampler = new RowSampler(Config.builder().setGoss(0.2, 0.1).build(), data.getNumRows());
+        sampler.sample(gradients);
+
+        double[] sortedMagnitudes = new double[data.getNumRows()];
+        for (int row = 0; row < sortedMagnitudes.length; row++) {
+            sortedMagnitudes[row] = Math.abs(original.getFirstDeriv(row));
+        }
+        java.util.Arrays.sort(sortedMagnitudes);
+        double cutoff = sortedMagnitudes[sortedMagnitudes.length - 2000];
+        int numTop = 0;
+        for (int row = 0; row < data.getNumRows(); row++) {
+            double magnitude = Math.abs(original.getFirstDeriv(row));
+            if (magnitude > cutoff) {
+                numTop++;
+                Check.isTrue(sampler.isSampled(row), "row " + row + " with a large gradient is kept");
+                Check.equal(original.getFirstDeriv(row), gradients.getFirstDeriv(row), "top row's derivative");
+            } else if (magnitude < cutoff && sampler.isSampled(row)) {
+                // kept at random, with probability 0.1 / 0.8, so standing in for 8 rows
+                Check.near(8.0 * original.getFirstDeriv(row), gradients.getFirstDeriv(row), 1e-12, "scaled derivative");
+            }
+        }
+        Check.isTrue(numTop > 1900, "top rows: " + numTop);
+        Check.isTrue(Math.abs(sampler.getNumSampled() - 3000) < 300, "about 3000 rows: " + sampler.getNumSampled());
+        Check.equal(sampler.getNumSampled(), countSampled(sampler, data.getNumRows()), "rows marked");
+    }
+
+    // the rows left out of each tree still get its increment, so the logits are those of predict
+    static void everyRowIsScoredAfterSampledTraining() throws Exception {
+        Path file = TestData.writeCsv(2000, 4, 24);
+        Config[] configs = {
+                Config.builder().setNumTrees(20).setMaxTreeDepth(4).setMinSamplesLeaf(5).setLearningRate(0.3)
+                        .setSubsample(0.5).build(),
+                Config.builder().setNumTrees(20).setMaxTreeDepth(4).setMinSamplesLeaf(5).setLearningRate(0.3)
+                        .setNumBins(32).setGoss(0.2, 0.1).build()
+        };
+        for (Config config : configs) {
+            Data train = Data.load(file.toString(), "Label");
+            GBTModel model = GBTModel.train(config, train);
+            Data scored = Data.load(file.toString(), "Label");
+            model.predict(scored);
+            Check.nearValues(TestData.logits(scored), TestData.logits(train), 1e-9, "training logits");
+        }
+    }
+
+    private static int countSampled(RowSampler sampler, int numRows) {
+        int count = 0;
+        for (int row = 0; row < numRows; row++) {
+            if (sampler.isSampled(row)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,55 @@
+package model;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// Scoring a file straight into another (GBTModel.scoreFile)
+class ScoreFileTest {
+
+    public static void main(String[] args) throws Exception {
+        writesWhatLoadPredictAndSaveWould();
+        badFilesFailAsLoadWould();
+        System.out.println("ScoreFileTest passed");
+    }
+
+    // a file of three chunks, with at most two of them in flight at once
+    static void writesWhatLoadPredictAndSaveWould() throws Exception {
+        GBTModel model = GBTModel.train(Config.builder().setNumTrees(10).setMaxTreeDepth(4).setMinSamplesLeaf(20)
+                .setLearningRate(0.3).setNumThreads(1).build(),
+                Data.load(TestData.writeCsv(1000, 4, 21).toString(), "Label"));
+
+        Random random = new Random(22);
+        StringBuilder builder = new StringBuilder("F1,F2,Label,F3,F4\n");
+        for (int row = 0; row < 300_000; row++) {
+            builder.append(random.nextGaussian()).append(',').append(random.nextGaussian()).append(',')
+                    .append(random.nextInt(2)).append(',').append(random.nextGaussian()).append(',')
+                    .append(Math.round(random.nextGaussian() * 20.0) / 20.0).append('\n');
+        }
+        Path input = TestData.writeFile(builder.toString(), ".csv");
+        Check.isTrue(input.toFile().length() > 2 * (8 << 20), "file of at least three chunks");
+
+        Data data = Data.load(input.toString(), "Label");
+        model.predict(data);
+        Path expected = TestData.tempFile(".csv");
+        data.save(expected.toString());
+        Path actual = TestData.tempFile(".csv");
+        model.scoreFile(input.toString(), actual.toString(), "Label");
+        Check.sameBytes(Files.readAllBytes(expected), Files.readAllBytes(actual), "scored file");
+    }
+
+    // a chunk's failure comes out of scoreFile as it comes out of Data.load, not wrapped
+    static void badFilesFailAsLoadWould() throws Exception {
+        GBTModel model = GBTModel.train(Config.builder().setNumTrees(3).setMaxTreeDepth(2).setMinSamplesLeaf(5)
+                .build(), Data.load(TestData.writeCsv(200, 2, 23).toString(), "Label"));
+        Path output = TestData.tempFile(".csv");
+        Path badLabel = TestData.writeCsv("Label,F1,F2", "1,0.5,2", "2,0.5,2");
+        Check.raises(NumberFormatException.class, () -> Data.load(badLabel.toString(), "Label"), "label 2, load");
+        Check.raises(NumberFormatException.class, () -> model.scoreFile(badLabel.toString(), output.toString(),
+                "Label"), "label 2");
+        Path shortRow = TestData.writeCsv("Label,F1,F2", "1,0.5,2", "0,0.5");
+        Check.raises(ArrayIndexOutOfBoundsException.class, () -> model.scoreFile(shortRow.toString(),
+                output.toString(), "Label"), "missing column");
+    }
+
+}
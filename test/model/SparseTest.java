@@ -0,0 +1,117 @@
+package model;
+
+import java.nio.file.Path;
+import java.util.Random;
+
+// Missing values, and features held sparse: training on them must be just as on the same data held dense
+class SparseTest {
+
+    public static void main(String[] args) throws Exception {
+        missingValuesGoTheLearnedWay();
+        sparseTrainsAsDense();
+        binaryFileKeepsSparseColumns();
+        badOptionsAreRejected();
+        System.out.println("SparseTest passed");
+    }
+
+    // Dense is a number, Empty mostly missing (and the rows missing it mostly positive), Zeros mostly 0.0
+    // with a few missing, Holes a number with a tenth missing
+    static Path writeSparseCsv(int numRows, long seed) throws Exception {
+        Random random = new Random(seed);
+        StringBuilder contents = new StringBuilder("Label,Dense,Empty,Zeros,Holes\n");
+        for (int row = 0; row < numRows; row++) {
+            double dense = Math.round(random.nextGaussian() * 20.0) / 20.0;
+            boolean emptyMissing = random.nextDouble() < 0.8;
+            double score = dense + (emptyMissing ? 1.0 : -1.0);
+            contents.append((random.nextDouble() < 1.0 / (1.0 + Math.exp(-2.0 * score))) ? "1," : "0,");
+            contents.append(dense).append(',');
+            contents.append(emptyMissing ? "" : Double.toString(Math.round(random.nextGaussian() * 20.0) / 20.0));
+            contents.append(',');
+            double zeros = random.nextDouble();
+            contents.append((zeros < 0.8) ? "0" : (zeros < 0.85) ? "" : Integer.toString(random.nextInt(7) + 1));
+            contents.append(',');
+            contents.append((random.nextDouble() < 0.1) ? "" : Double.toString(Math.round(random.nextDouble() * 40.0) / 20.0));
+            contents.append('\n');
+        }
+        return TestData.writeFile(contents.toString(), ".csv");
+    }
+
+    static void missingValuesGoTheLearnedWay() throws Exception {
+        Path file = writeSparseCsv(3000, 30);
+        Data data = Data.load(file.toString(), "Label");
+        Check.isTrue(Double.isNaN(data.getFeatureValue(1, firstMissing(data, 1))), "an empty cell is missing");
+        GBTModel model = GBTModel.train(Config.builder().setNumTrees(20).setMaxTreeDepth(3).setMinSamplesLeaf(20)
+                .setLearningRate(0.3).build(), data);
+        double missing = model.predictMargin(new double[]{0.0, Double.NaN, 0.0, 1.0});
+        double present = model.predictMargin(new double[]{0.0, 0.0, 0.0, 1.0});
+        Check.isTrue(missing > present + 1.0, "rows missing Empty score higher: " + missing + " vs " + present);
+    }
+
+    static void sparseTrainsAsDense() throws Exception {
+        Path file = writeSparseCsv(3000, 31);
+        Data dense = Data.load(file.toString(), "Label");
+        Data sparseMissing = Data.loadSparse(file.toString(), "Label");
+        Data sparseZeros = Data.loadSparse(file.toString(), "Label", 0.0, 0.5);
+        Check.isTrue(!sparseMissing.isSparse(0) && sparseMissing.isSparse(1) && !sparseMissing.isSparse(2),
+                "only Empty is sparse by default");
+        Check.isTrue(!sparseZeros.isSparse(1) && sparseZeros.isSparse(2), "Zeros is sparse with default 0");
+        Check.equal(0.0, sparseZeros.getDefaultValue(2), "default value");
+        for (int featureId = 0; featureId < dense.getNumFeatures(); featureId++) {
+            for (int row = 0; row < dense.getNumRows(); row++) {
+                Check.equal(dense.getFeatureValue(featureId, row), sparseZeros.getFeatureValue(featureId, row),
+                        "value of feature " + featureId + " row " + row);
+            }
+        }
+
+        for (int numBins : new int[]{0, 32}) {
+            Config.Builder builder = Config.builder().setNumTrees(20).setMaxTreeDepth(4).setMinSamplesLeaf(20)
+                    .setLearningRate(0.3);
+            if (numBins > 0) {
+                builder.setNumBins(numBins);
+            }
+            Config config = builder.build();
+            double[] expected = scores(GBTModel.train(config, Data.load(file.toString(), "Label")), file);
+            Check.nearValues(expected, scores(GBTModel.train(config, Data.loadSparse(file.toString(), "Label")), file),
+                    1e-9, "missing-default sparse, " + numBins + " bins");
+            Check.nearValues(expected, scores(GBTModel.train(config,
+                    Data.loadSparse(file.toString(), "Label", 0.0, 0.5)), file), 1e-9, "zero-default sparse, " + numBins + " bins");
+        }
+    }
+
+    static void binaryFileKeepsSparseColumns() throws Exception {
+        Path file = writeSparseCsv(500, 32);
+        Data sparse = Data.loadSparse(file.toString(), "Label", 0.0, 0.5);
+        Path binary = TestData.tempFile(".gbtdata");
+        sparse.saveBinary(binary.toString());
+        Data loaded = Data.loadBinary(binary.toString());
+        Check.isTrue(loaded.isSparse(2) && !loaded.isSparse(1), "sparse columns");
+        Check.equal(0.0, loaded.getDefaultValue(2), "default value");
+        Check.sameValues(sparse.getEntryValues(2), loaded.getEntryValues(2), "entries");
+        for (int row = 0; row < sparse.getNumRows(); row++) {
+            Check.equal(sparse.getFeatureValue(3, row), loaded.getFeatureValue(3, row), "Holes row " + row);
+        }
+    }
+
+    static void badOptionsAreRejected() throws Exception {
+        Path file = writeSparseCsv(10, 33);
+        Check.raises(IllegalArgumentException.class,
+                () -> Data.loadSparse(file.toString(), "Label", Double.POSITIVE_INFINITY, 0.5), "infinite default");
+        Check.raises(IllegalArgumentException.class,
+                () -> Data.loadSparse(file.toString(), "Label", 0.0, 0.0), "max density 0");
+    }
+
+    private static double[] scores(GBTModel model, Path file) throws Exception {
+        Data scored = Data.load(file.toString(), "Label");
+        model.predict(scored);
+        return TestData.logits(scored);
+    }
+
+    private static int firstMissing(Data data, int featureId) {
+        int row = 0;
+        while (!Double.isNaN(data.getFeatureValue(featureId, row))) {
+            row++;
+        }
+        return row;
+    }
+
+}
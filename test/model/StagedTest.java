@@ -0,0 +1,44 @@
+package model;
+
+import java.nio.file.Path;
+
+// predictStaged: each stage is the score of the model cut short at that many trees
+class StagedTest {
+
+    public static void main(String[] args) throws Exception {
+        stagesMatchShorterModels();
+        badCheckpointsAreRejected();
+        System.out.println("StagedTest passed");
+    }
+
+    static void stagesMatchShorterModels() throws Exception {
+        Path file = TestData.writeCsv(1500, 4, 23);
+        GBTModel model = GBTModel.train(config(30), Data.load(file.toString(), "Label"));
+        Check.equal(30, model.getNumTrees(), "trees");
+        Data test = Data.load(file.toString(), "Label");
+        int[] checkpoints = {1, 10, 30};
+        double[][] staged = model.predictStaged(test, checkpoints);
+        Check.sameValues(new double[test.getNumRows()], TestData.logits(test), "logits of the scored data");
+        Check.sameValues(model.predictMargins(test), staged[2], "last stage");
+        for (int index = 0; index < 2; index++) {
+            // training is deterministic, so a shorter model is the first trees of the longer one
+            GBTModel shorter = GBTModel.train(config(checkpoints[index]), Data.load(file.toString(), "Label"));
+            Check.sameValues(shorter.predictMargins(test), staged[index], checkpoints[index] + " trees");
+        }
+    }
+
+    static void badCheckpointsAreRejected() throws Exception {
+        Path file = TestData.writeCsv(300, 2, 24);
+        Data data = Data.load(file.toString(), "Label");
+        GBTModel model = GBTModel.train(config(5), data);
+        Check.raises(IllegalArgumentException.class, () -> model.predictStaged(data, new int[]{0, 3}), "no trees");
+        Check.raises(IllegalArgumentException.class, () -> model.predictStaged(data, new int[]{3, 2}), "descending");
+        Check.raises(IllegalArgumentException.class, () -> model.predictStaged(data, new int[]{6}), "too many trees");
+    }
+
+    private static Config config(int numTrees) {
+        return Config.builder().setNumTrees(numTrees).setMaxTreeDepth(4).setMinSamplesLeaf(5).setLearningRate(0.3)
+                .build();
+    }
+
+}
@@ -0,0 +1,72 @@
+package model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// Small synthetic data sets for the tests, written out as CSV files (which are deleted on exit)
+final class TestData {
+
+    private TestData() {}
+
+    // numRows rows of numFeatures features (F1, F2, ...), after the Label column. Each feature takes fewer than 255
+    // values (multiples of 0.05), so that histogram splits can match exact ones, but enough that two features
+    // hardly ever split a node's rows the same way (which would leave the split to FeatureSelector's shuffle).
+    // The label depends noisily on all the features, so that trees have something to learn.
+    // The same seed always gives the same file.
+    static Path writeCsv(int numRows, int numFeatures, long seed) throws IOException {
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder("Label");
+        for (int featureId = 0; featureId < numFeatures; featureId++) {
+            builder.append(",F").append(featureId + 1);
+        }
+        builder.append('\n');
+        double[] values = new double[numFeatures];
+        for (int row = 0; row < numRows; row++) {
+            double logit = 0.0;
+            for (int featureId = 0; featureId < numFeatures; featureId++) {
+                values[featureId] = Math.round(random.nextGaussian() * 20.0) / 20.0;
+                logit += ((featureId % 2 == 0) ? 1.0 : -0.5) * values[featureId];
+            }
+            logit += (numFeatures > 1) ? values[0] * values[1] : 0.0;
+            boolean label = random.nextDouble() < 1.0 / (1.0 + Math.exp(-logit));
+            builder.append(label ? '1' : '0');
+            for (double value : values) {
+                builder.append(',').append(value);
+            }
+            builder.append('\n');
+        }
+        return writeFile(builder.toString(), ".csv");
+    }
+
+    // a file of the given lines (each ended with a newline)
+    static Path writeCsv(String... lines) throws IOException {
+        return writeFile(String.join("\n", lines) + "\n", ".csv");
+    }
+
+    static Path writeFile(String contents, String suffix) throws IOException {
+        Path path = tempFile(suffix);
+        Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    // a fresh path (no file there yet) in the temporary directory
+    static Path tempFile(String suffix) throws IOException {
+        Path path = Files.createTempFile("gbt-test", suffix);
+        Files.delete(path);
+        path.toFile().deleteOnExit();
+        return path;
+    }
+
+    // every row's logit (as left by the last train or predict on data)
+    static double[] logits(Data data) {
+        double[] logits = new double[data.getNumRows()];
+        for (int row = 0; row < logits.length; row++) {
+            logits[row] = data.getLogit(row);
+        }
+        return logits;
+    }
+
+}